@@ -39,6 +39,14 @@ public class Athlete extends Printable implements Comparable<Athlete>,
 
 	}
 
+	public Athlete(String name, NationCategories nationality,
+			EventCategories participatingEvent, int score) {
+		this.name = name;
+		this.nationality = nationality;
+		this.event = participatingEvent;
+		this.score = score;
+	}
+
 	/**
 	 * Function randomly increments the athlete's score.
 	 */
@@ -65,6 +73,23 @@ public class Athlete extends Printable implements Comparable<Athlete>,
 		return this.nationality;
 	}
 
+	/**
+	 * Getters for the name, event and score of the athlete.
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	public EventCategories getEvent() {
+		return this.event;
+	}
+
+	public int getScore() {
+		return this.score;
+	}
+
 	/**
 	 * Print methods. Print contents is an implementation of the abstract
 	 * inherited functions.
@@ -0,0 +1,204 @@
+package base;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+/**
+ * A read-only list of athletes whose fields are stored one column per field
+ * in a single buffer. A list of N athletes costs a handful of heap objects
+ * however large N is, instead of an Athlete, a name String and its characters
+ * per athlete, so the scores retained by Orgetorix and the Obelix caches add
+ * little to the heap or to garbage collection.
+ *
+ * Only large lists are held off the heap, in a direct buffer. Allocating one
+ * is slow and its memory is only freed after a collection finds it
+ * unreachable, while scores are replaced on every update, so smaller lists
+ * use a heap buffer, a single array of bytes the collector never has to scan.
+ *
+ * Names are stored as the two halves of the UUID they normally are; any other
+ * name is kept on the heap. {@link #get(int)} builds a new Athlete on each
+ * call, so callers that only need one field should use the column getters.
+ * The list is serialized as an ArrayList of Athletes, so whoever receives it
+ * needs nothing but the base classes.
+ *
+ * @author aravind
+ *
+ */
+public class AthleteScores extends AbstractList<Athlete> implements
+		RandomAccess, Serializable {
+	private static final long serialVersionUID = -5219378103964810127L;
+	private static int ROW_SIZE = 8 + 8 + 8 + 4 + 1 + 1;
+	private static int MIN_DIRECT_SIZE = 1 << 20;
+	private static long NO_TIMESTAMP = Long.MIN_VALUE;
+	private static byte NO_ORDINAL = -1;
+	private static AthleteScores EMPTY = new AthleteScores(
+			new ArrayList<Athlete>());
+
+	private int size;
+	private LongBuffer nameHighBits;
+	private LongBuffer nameLowBits;
+	private LongBuffer timestamps;
+	private IntBuffer scores;
+	private ByteBuffer nationalities;
+	private ByteBuffer events;
+
+	/**
+	 * Names that are not UUIDs, by index, or null if every name is a UUID.
+	 */
+	private String[] otherNames;
+
+	private AthleteScores(List<Athlete> athletes) {
+		this.size = athletes.size();
+		int bufferSize = Math.max(1, this.size * ROW_SIZE);
+		ByteBuffer buffer = (bufferSize < MIN_DIRECT_SIZE) ? ByteBuffer
+				.allocate(bufferSize) : ByteBuffer.allocateDirect(bufferSize);
+		this.nameHighBits = column(buffer, 0, 8).asLongBuffer();
+		this.nameLowBits = column(buffer, 8, 8).asLongBuffer();
+		this.timestamps = column(buffer, 16, 8).asLongBuffer();
+		this.scores = column(buffer, 24, 4).asIntBuffer();
+		this.nationalities = column(buffer, 28, 1);
+		this.events = column(buffer, 29, 1);
+		for (int i = 0; i < this.size; i++) {
+			put(i, athletes.get(i));
+		}
+	}
+
+	/**
+	 * @param buffer
+	 * @param rowOffset
+	 *            The offset of the column's field in a row.
+	 * @param fieldSize
+	 * @return The part of the buffer holding the column.
+	 */
+	private ByteBuffer column(ByteBuffer buffer, int rowOffset, int fieldSize) {
+		ByteBuffer column = buffer.duplicate();
+		column.position(rowOffset * this.size);
+		column.limit(rowOffset * this.size + fieldSize * this.size);
+		return column.slice();
+	}
+
+	/**
+	 * @param athletes
+	 * @return A columnar copy of the athletes, or the list itself if it is one
+	 *         already.
+	 */
+	public static AthleteScores of(List<Athlete> athletes) {
+		if (athletes instanceof AthleteScores) {
+			return (AthleteScores) athletes;
+		}
+		if (athletes.isEmpty()) {
+			return EMPTY;
+		}
+		return new AthleteScores(athletes);
+	}
+
+	private void put(int index, Athlete athlete) {
+		UUID id = parseUUID(athlete.getName());
+		if (id != null) {
+			this.nameHighBits.put(index, id.getMostSignificantBits());
+			this.nameLowBits.put(index, id.getLeastSignificantBits());
+		} else {
+			if (this.otherNames == null) {
+				this.otherNames = new String[this.size];
+			}
+			this.otherNames[index] = athlete.getName();
+		}
+		Long timestamp = athlete.getTimestamp();
+		this.timestamps.put(index, (timestamp == null) ? NO_TIMESTAMP
+				: timestamp);
+		this.scores.put(index, athlete.getScore());
+		this.nationalities.put(index, ordinal(athlete.getNationality()));
+		this.events.put(index, ordinal(athlete.getEvent()));
+	}
+
+	/**
+	 * @param name
+	 * @return The UUID the name is the canonical form of, or null.
+	 */
+	private static UUID parseUUID(String name) {
+		if (name == null || name.length() != 36) {
+			return null;
+		}
+		try {
+			UUID id = UUID.fromString(name);
+			return id.toString().equals(name) ? id : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static byte ordinal(Enum<?> value) {
+		return (value == null) ? NO_ORDINAL : (byte) value.ordinal();
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public Athlete get(int index) {
+		checkIndex(index);
+		Athlete athlete = new Athlete(getName(index), getNationality(index),
+				getEvent(index), getScore(index));
+		long timestamp = this.timestamps.get(index);
+		if (timestamp != NO_TIMESTAMP) {
+			athlete.setTimestamp(timestamp);
+		}
+		return athlete;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size "
+					+ this.size + ".");
+		}
+	}
+
+	/**
+	 * Column getters, which read one field without building an Athlete.
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		if (this.otherNames != null && this.otherNames[index] != null) {
+			return this.otherNames[index];
+		}
+		return new UUID(this.nameHighBits.get(index),
+				this.nameLowBits.get(index)).toString();
+	}
+
+	public int getScore(int index) {
+		checkIndex(index);
+		return this.scores.get(index);
+	}
+
+	public NationCategories getNationality(int index) {
+		checkIndex(index);
+		byte ordinal = this.nationalities.get(index);
+		return (ordinal == NO_ORDINAL) ? null
+				: NationCategories.values()[ordinal];
+	}
+
+	public EventCategories getEvent(int index) {
+		checkIndex(index);
+		byte ordinal = this.events.get(index);
+		return (ordinal == NO_ORDINAL) ? null
+				: EventCategories.values()[ordinal];
+	}
+
+	/**
+	 * @return A heap copy of the list, which is what is serialized.
+	 * @throws ObjectStreamException
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return new ArrayList<Athlete>(this);
+	}
+}
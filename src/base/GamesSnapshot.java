@@ -0,0 +1,85 @@
+package base;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The scores and results of every event and the medal tallies of every
+ * nation, read from Orgetorix in one call. Events that have not completed
+ * have no results.
+ *
+ * @author aravind
+ *
+ */
+public class GamesSnapshot implements Serializable {
+	private static final long serialVersionUID = 5021498363518847156L;
+
+	private long timestamp;
+	private EnumMap<EventCategories, List<Athlete>> scores;
+	private EnumMap<EventCategories, Results> results;
+	private EnumMap<NationCategories, Tally> medalTallies;
+
+	public GamesSnapshot(long timestamp) {
+		this.timestamp = timestamp;
+		this.scores = new EnumMap<EventCategories, List<Athlete>>(
+				EventCategories.class);
+		this.results = new EnumMap<EventCategories, Results>(
+				EventCategories.class);
+		this.medalTallies = new EnumMap<NationCategories, Tally>(
+				NationCategories.class);
+	}
+
+	/**
+	 * @return The time the snapshot was read.
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public List<Athlete> getScores(EventCategories eventName) {
+		return this.scores.get(eventName);
+	}
+
+	public void putScores(EventCategories eventName, List<Athlete> scores) {
+		this.scores.put(eventName, scores);
+	}
+
+	/**
+	 * @param eventName
+	 * @return The results, or null if the event has not completed.
+	 */
+	public Results getResults(EventCategories eventName) {
+		return this.results.get(eventName);
+	}
+
+	public void putResults(EventCategories eventName, Results eventResult) {
+		this.results.put(eventName, eventResult);
+	}
+
+	public Tally getMedalTally(NationCategories nation) {
+		return this.medalTallies.get(nation);
+	}
+
+	public Map<NationCategories, Tally> getMedalTallies() {
+		return this.medalTallies;
+	}
+
+	public void putMedalTally(NationCategories nation, Tally medalTally) {
+		this.medalTallies.put(nation, medalTally);
+	}
+
+	/**
+	 * Adds the events and nations of a snapshot of another shard. The merged
+	 * snapshot is dated by the earlier of the two reads.
+	 *
+	 * @param shardSnapshot
+	 */
+	public void merge(GamesSnapshot shardSnapshot) {
+		this.scores.putAll(shardSnapshot.scores);
+		this.results.putAll(shardSnapshot.results);
+		this.medalTallies.putAll(shardSnapshot.medalTallies);
+		this.timestamp = Math.min(this.timestamp, shardSnapshot.timestamp);
+	}
+}
@@ -40,6 +40,16 @@ public class Results extends Printable implements Serializable {
 		return winners.get(medalType);
 	}
 
+	/**
+	 * Sets the winner of a single medal.
+	 * 
+	 * @param medalType
+	 * @param team
+	 */
+	public void setTeam(MedalCategories medalType, NationCategories team) {
+		this.winners.put(medalType, team);
+	}
+
 	/**
 	 * Sets the winners.
 	 * 
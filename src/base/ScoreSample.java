@@ -0,0 +1,30 @@
+package base;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The scores of an event as they stood at one point in its history.
+ *
+ * @author aravind
+ *
+ */
+public class ScoreSample implements Serializable {
+	private static final long serialVersionUID = 3378561102574180713L;
+
+	private long timestamp;
+	private ArrayList<Athlete> scores;
+
+	public ScoreSample(long timestamp, ArrayList<Athlete> scores) {
+		this.timestamp = timestamp;
+		this.scores = scores;
+	}
+
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public ArrayList<Athlete> getScores() {
+		return this.scores;
+	}
+}
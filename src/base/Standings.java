@@ -0,0 +1,169 @@
+package base;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The medal table: nations ranked by gold, then silver, then bronze leaves.
+ * Nations with equal tallies share a rank and are listed in the order of
+ * {@link NationCategories}. A Standings is never modified once built, so one
+ * instance can be handed to any number of readers.
+ *
+ * @author aravind
+ *
+ */
+public class Standings implements Serializable {
+	private static final long serialVersionUID = -3385128204521968471L;
+
+	/**
+	 * Orders nations by their tallies, leaders first.
+	 */
+	public static Comparator<Standing> RANKING = new Comparator<Standing>() {
+
+		@Override
+		public int compare(Standing first, Standing second) {
+			for (MedalCategories medalType : MedalCategories.values()) {
+				int difference = second.getMedalTally().getCount(medalType)
+						- first.getMedalTally().getCount(medalType);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+			return first.getNation().compareTo(second.getNation());
+		}
+	};
+
+	/**
+	 * A nation's place in the medal table.
+	 */
+	public static class Standing implements Serializable {
+		private static final long serialVersionUID = 2230187126462419702L;
+
+		private int rank;
+		private NationCategories nation;
+		private Tally medalTally;
+
+		public Standing(NationCategories nation, Tally medalTally) {
+			this.nation = nation;
+			this.medalTally = medalTally;
+		}
+
+		/**
+		 * @return The nation's rank, counting from 1.
+		 */
+		public int getRank() {
+			return this.rank;
+		}
+
+		public NationCategories getNation() {
+			return this.nation;
+		}
+
+		public Tally getMedalTally() {
+			return this.medalTally;
+		}
+	}
+
+	private ArrayList<Standing> standings;
+	private long timestamp;
+
+	/**
+	 * @param rankedStandings
+	 *            The standings, already ordered by {@link #RANKING}.
+	 * @param timestamp
+	 *            The time of the latest medal change reflected.
+	 */
+	public Standings(List<Standing> rankedStandings, long timestamp) {
+		this.standings = new ArrayList<Standing>(rankedStandings.size());
+		this.timestamp = timestamp;
+		Standing previous = null;
+		for (int i = 0; i < rankedStandings.size(); i++) {
+			Standing standing = rankedStandings.get(i);
+			Standing ranked = new Standing(standing.nation, standing.medalTally);
+			if (previous != null
+					&& sameTally(previous.medalTally, standing.medalTally)) {
+				ranked.rank = this.standings.get(i - 1).rank;
+			} else {
+				ranked.rank = i + 1;
+			}
+			this.standings.add(ranked);
+			previous = standing;
+		}
+	}
+
+	private static boolean sameTally(Tally first, Tally second) {
+		for (MedalCategories medalType : MedalCategories.values()) {
+			if (first.getCount(medalType) != second.getCount(medalType)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public List<Standing> getStandings() {
+		return Collections.unmodifiableList(this.standings);
+	}
+
+	public int size() {
+		return this.standings.size();
+	}
+
+	/**
+	 * @param topN
+	 * @return The first topN places, or all of them if there are fewer, with
+	 *         their ranks in the whole table.
+	 */
+	public Standings getTop(int topN) {
+		if (topN >= this.standings.size()) {
+			return this;
+		}
+		Standings top = new Standings(new ArrayList<Standing>(), this.timestamp);
+		top.standings.addAll(this.standings.subList(0, Math.max(0, topN)));
+		return top;
+	}
+
+	/**
+	 * Merges the tables of disjoint sets of nations, such as those held by
+	 * different Orgetorix shards, into one ranked table.
+	 *
+	 * @param first
+	 * @param second
+	 * @return Standings
+	 */
+	public static Standings merge(Standings first, Standings second) {
+		List<Standing> merged = new ArrayList<Standing>(first.size()
+				+ second.size());
+		int i = 0;
+		int j = 0;
+		while (i < first.size() || j < second.size()) {
+			if (j >= second.size()
+					|| (i < first.size() && RANKING.compare(
+							first.standings.get(i), second.standings.get(j)) <= 0)) {
+				merged.add(first.standings.get(i++));
+			} else {
+				merged.add(second.standings.get(j++));
+			}
+		}
+		return new Standings(merged, Math.max(first.timestamp,
+				second.timestamp));
+	}
+
+	public void printStandings() {
+		for (Standing standing : this.standings) {
+			System.out.print(standing.rank + ". "
+					+ standing.nation.getCategory() + " ");
+			for (MedalCategories medalType : MedalCategories.values()) {
+				System.out.print(medalType.getCategory() + " : "
+						+ standing.medalTally.getCount(medalType) + " ");
+			}
+			System.out.println();
+		}
+	}
+}
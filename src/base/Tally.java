@@ -32,6 +32,20 @@ public class Tally extends Printable implements Serializable {
 		this.medalTally.put(category, currentCount + 1);
 	}
 
+	/**
+	 * Getter and setter for the number of medals of a given type.
+	 * 
+	 * @param category
+	 * @return
+	 */
+	public int getCount(MedalCategories category) {
+		return this.medalTally.get(category);
+	}
+
+	public void setCount(MedalCategories category, int count) {
+		this.medalTally.put(category, count);
+	}
+
 	/**
 	 * Print methods and Printable interface implementation.
 	 */
@@ -0,0 +1,53 @@
+package base;
+
+import java.io.Serializable;
+
+/**
+ * Identifies an update by the producer that sent it and the sequence number
+ * the producer gave it. Sequence numbers start at 1 and increase with every
+ * update a producer sends, so an update sent again after a timeout carries
+ * the same id and can be recognised as a duplicate.
+ *
+ * @author aravind
+ *
+ */
+public class UpdateId implements Serializable {
+	private static final long serialVersionUID = -1290364715094375283L;
+
+	private String producerId;
+	private long sequence;
+
+	public UpdateId(String producerId, long sequence) {
+		this.producerId = producerId;
+		this.sequence = sequence;
+	}
+
+	public String getProducerId() {
+		return this.producerId;
+	}
+
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof UpdateId)) {
+			return false;
+		}
+		UpdateId that = (UpdateId) other;
+		return this.sequence == that.sequence
+				&& this.producerId.equals(that.producerId);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.producerId.hashCode() * 31
+				+ (int) (this.sequence ^ (this.sequence >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return this.producerId + "#" + this.sequence;
+	}
+}
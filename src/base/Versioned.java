@@ -0,0 +1,53 @@
+package base;
+
+import java.io.Serializable;
+
+/**
+ * A value read from Orgetorix together with the version of the record it was
+ * read from. A conditional read whose caller already holds the current
+ * version returns no value, only the version and a not-modified flag.
+ *
+ * @author aravind
+ *
+ */
+public class Versioned<T> implements Serializable {
+	private static final long serialVersionUID = -2916485037415862274L;
+
+	/**
+	 * Version of a record that has never been read, which is never current.
+	 */
+	public static long NO_VERSION = -1;
+
+	private long version;
+	private T value;
+	private boolean modified;
+
+	private Versioned(long version, T value, boolean modified) {
+		this.version = version;
+		this.value = value;
+		this.modified = modified;
+	}
+
+	public static <T> Versioned<T> of(long version, T value) {
+		return new Versioned<T>(version, value, true);
+	}
+
+	public static <T> Versioned<T> notModified(long version) {
+		return new Versioned<T>(version, null, false);
+	}
+
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * @return The value, or null if the record was not modified.
+	 */
+	public T getValue() {
+		return this.value;
+	}
+
+	public boolean isModified() {
+		return this.modified;
+	}
+}
@@ -412,24 +412,20 @@ public class Tablet extends ServiceComponent implements TabletInterface {
 	}
 
 	/**
-	 * Request medal tallies for all nations from Obelix.
+	 * Request medal tallies for all nations from Obelix in one call.
 	 * 
 	 * @throws RemoteException
 	 */
 	public void updateMedalTallies() throws RemoteException {
 		synchronized (this.medalTallies) {
-			for (NationCategories nation : NationCategories.values()) {
-				synchronized(this.obelixStub) {
-					try {
-						this.setupObelixStub();
-					} catch (NotBoundException e) {
-						e.printStackTrace();
-					}
-					this.medalTallies.put(
-							nation,
-							this.obelixStub.getMedalTally(nation,
-									this.getServerName()));
-				}				
+			synchronized (this.obelixStub) {
+				try {
+					this.setupObelixStub();
+				} catch (NotBoundException e) {
+					e.printStackTrace();
+				}
+				this.medalTallies.putAll(this.obelixStub
+						.getAllTallies(this.getServerName()));
 			}
 		}
 	}
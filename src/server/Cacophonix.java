@@ -7,14 +7,22 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import util.RegistryService;
 import util.ServerDetail;
 import util.ServiceComponent;
 import base.Athlete;
 import base.Event;
+import base.EventCategories;
 import base.OlympicException;
+import base.UpdateId;
 
 /**
  * Encapsulates the functions of Cacophonix.
@@ -24,6 +32,15 @@ import base.OlympicException;
  *
  */
 /**
+ * Every update received from Games is numbered in the order received and
+ * relayed on a thread of its event, so Games is not held up while Obelix and
+ * Orgetorix apply it, and updates of different events can be in flight at
+ * once. Updates of the same event are relayed one at a time, in the order
+ * received, so Obelix never pushes older scores after newer ones. An update
+ * whose relay fails is sent again with the same {@link UpdateId}, which
+ * Orgetorix uses to apply it only once. One that still fails is reported to
+ * Games by failing its next call.
+ * 
  * @author aravind
  * 
  */
@@ -40,15 +57,30 @@ public class Cacophonix extends ServiceComponent implements CacophonixInterface
 	// To prevent the server from being garbage collected.
 	private static Cacophonix cacophonixServerInstance;
 
-	private ObelixInterface clientStub;
+	private volatile ObelixInterface clientStub;
+	private AtomicLong sequence;
+	private Map<EventCategories, ExecutorService> relayThreads;
+
+	/**
+	 * The last update given up on, until Games has been told.
+	 */
+	private AtomicReference<UpdateId> failedUpdate;
 
 	public Cacophonix(String serviceFinderHost, int serviceFinderPort) {
 		super(CACOPHONIX_SERVICE_NAME, serviceFinderHost, serviceFinderPort);
+		this.sequence = new AtomicLong();
+		this.relayThreads = new EnumMap<EventCategories, ExecutorService>(
+				EventCategories.class);
+		for (EventCategories eventName : EventCategories.values()) {
+			this.relayThreads.put(eventName,
+					Executors.newSingleThreadExecutor());
+		}
+		this.failedUpdate = new AtomicReference<UpdateId>();
 	}
 
 	public Cacophonix(ObelixInterface clientStub, String serviceFinderHost,
 			int serviceFinderPort) {
-		super(CACOPHONIX_SERVICE_NAME, serviceFinderHost, serviceFinderPort);
+		this(serviceFinderHost, serviceFinderPort);
 		this.clientStub = clientStub;
 	}
 
@@ -66,15 +98,20 @@ public class Cacophonix extends ServiceComponent implements CacophonixInterface
 	 * results to be relayed on to Obelix, whose database is accordingly
 	 * updated.
 	 */
-	public void updateResultsAndTallies(Event simulatedEvent)
+	public void updateResultsAndTallies(final Event simulatedEvent)
 			throws RemoteException {
-		//TODO: Handle null properly here. Serious issue.
-		System.err.println("Sending updateResultsAndTallies msg.");
-		Cacophonix.getCacophonixInstance().setupClientInstance();
-		if (clientStub != null) {
-			clientStub.updateResultsAndTallies(simulatedEvent);
-			return;
-		}
+		checkRelayed();
+		final UpdateId updateId = nextUpdateId();
+		relay(simulatedEvent.getName(), updateId, new ObelixCall() {
+
+			@Override
+			public void call(ObelixInterface obelixStub)
+					throws RemoteException {
+				System.err.println("Sending updateResultsAndTallies msg "
+						+ updateId + ".");
+				obelixStub.updateResultsAndTallies(simulatedEvent, updateId);
+			}
+		});
 	}
 
 	/**
@@ -82,18 +119,100 @@ public class Cacophonix extends ServiceComponent implements CacophonixInterface
 	 * event. The updates are relayed on to Obelix whose database is accordingly
 	 * updated.
 	 */
-	public void updateCurrentScores(Event simulatedEvent,
-			List<Athlete> currentScores) throws RemoteException {
-		//TODO: Handle null properly here. Serious issue.
-		System.err.println("Sending updatedCurrentScores msg.");
-		Cacophonix.getCacophonixInstance().setupClientInstance();
-		if (clientStub != null) {
-			clientStub.updateCurrentScores(simulatedEvent.getName(),
-					currentScores);
-			return;
+	public void updateCurrentScores(final Event simulatedEvent,
+			final List<Athlete> currentScores) throws RemoteException {
+		checkRelayed();
+		final UpdateId updateId = nextUpdateId();
+		relay(simulatedEvent.getName(), updateId, new ObelixCall() {
+
+			@Override
+			public void call(ObelixInterface obelixStub)
+					throws RemoteException {
+				System.err.println("Sending updatedCurrentScores msg "
+						+ updateId + ".");
+				obelixStub.updateCurrentScores(simulatedEvent.getName(),
+						currentScores, updateId);
+			}
+		});
+	}
+
+	/**
+	 * Reports an update whose relay was given up on since the last call, so
+	 * that Games does not carry on as if it had been applied.
+	 * 
+	 * @throws RemoteException
+	 */
+	private void checkRelayed() throws RemoteException {
+		UpdateId updateId = this.failedUpdate.getAndSet(null);
+		if (updateId != null) {
+			throw new RemoteException("Could not relay update " + updateId
+					+ " to Obelix.");
 		}
 	}
 
+	/**
+	 * Gives the next update the next sequence number of this server, whose
+	 * name is unique to the process, so that ids are never reused.
+	 * 
+	 * @return UpdateId
+	 */
+	private UpdateId nextUpdateId() {
+		return new UpdateId(this.getServerName(),
+				this.sequence.incrementAndGet());
+	}
+
+	/**
+	 * A call relaying an update to Obelix, which can be made again.
+	 */
+	private interface ObelixCall {
+		public void call(ObelixInterface obelixStub) throws RemoteException;
+	}
+
+	/**
+	 * Relays an update on the relay thread of its event, after the updates of
+	 * the event received before it. If Obelix cannot be reached, it is looked
+	 * up again and the update is sent again, with the same id, up to
+	 * RETRY_LIMIT times, before it is recorded as failed.
+	 * 
+	 * @param eventName
+	 * @param updateId
+	 * @param call
+	 */
+	private void relay(EventCategories eventName, final UpdateId updateId,
+			final ObelixCall call) {
+		this.relayThreads.get(eventName).execute(new Runnable() {
+
+			@Override
+			public void run() {
+				for (int i = 0; i <= RETRY_LIMIT; i++) {
+					ObelixInterface obelixStub = clientStub;
+					if (obelixStub == null) {
+						obelixStub = setupClientInstance();
+					}
+					if (obelixStub != null) {
+						try {
+							call.call(obelixStub);
+							return;
+						} catch (RemoteException e) {
+							System.err.println("Could not relay update "
+									+ updateId + ", retrying.");
+							clientStub = null;
+						}
+					}
+					try {
+						Thread.sleep(RETRY_WAIT);
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+						break;
+					}
+				}
+				System.err.println("Gave up relaying update " + updateId
+						+ ".");
+				failedUpdate.set(updateId);
+			}
+		});
+	}
+
 	/**
 	 * Sets up client and server functions of Cacophonix.
 	 * 
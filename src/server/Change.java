@@ -0,0 +1,112 @@
+package server;
+
+import java.io.Serializable;
+import java.util.List;
+
+import server.LogRecord.RecordType;
+import base.Athlete;
+import base.EventCategories;
+import base.NationCategories;
+import base.Results;
+import base.Tally;
+import base.UpdateId;
+
+/**
+ * A change to the Orgetorix database as shipped to a standby by the
+ * {@link ChangeFeed}. Unlike a {@link LogRecord}, a change carries the state
+ * the update produced, such as a nation's whole tally rather than the medals
+ * it was credited with, so applying it twice or after a full resync is
+ * harmless. A tally change also carries the id of the update that credited
+ * it, so a standby knows that update was applied should it be sent again after
+ * a failover.
+ *
+ * @author aravind
+ *
+ */
+public class Change implements Serializable {
+	private static final long serialVersionUID = -4622915530163829750L;
+
+	private long offset;
+	private RecordType type;
+	private EventCategories eventName;
+	private NationCategories nation;
+	private List<Athlete> scores;
+	private Results eventResult;
+	private Tally medalTally;
+	private UpdateId updateId;
+
+	private Change(RecordType type) {
+		this.type = type;
+	}
+
+	public static Change scores(EventCategories eventName,
+			List<Athlete> scores) {
+		Change change = new Change(RecordType.SCORES);
+		change.eventName = eventName;
+		change.scores = scores;
+		return change;
+	}
+
+	public static Change results(EventCategories eventName,
+			Results eventResult) {
+		Change change = new Change(RecordType.RESULTS);
+		change.eventName = eventName;
+		change.eventResult = eventResult;
+		return change;
+	}
+
+	public static Change tally(NationCategories nation, Tally medalTally) {
+		return tally(nation, medalTally, null);
+	}
+
+	public static Change tally(NationCategories nation, Tally medalTally,
+			UpdateId updateId) {
+		Change change = new Change(RecordType.TALLIES);
+		change.nation = nation;
+		change.medalTally = medalTally;
+		change.updateId = updateId;
+		return change;
+	}
+
+	/**
+	 * @return The position of the change in the feed it was published to.
+	 */
+	public long getOffset() {
+		return this.offset;
+	}
+
+	void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+	public RecordType getType() {
+		return this.type;
+	}
+
+	public EventCategories getEventName() {
+		return this.eventName;
+	}
+
+	public NationCategories getNation() {
+		return this.nation;
+	}
+
+	public List<Athlete> getScores() {
+		return this.scores;
+	}
+
+	public Results getEventResult() {
+		return this.eventResult;
+	}
+
+	public Tally getMedalTally() {
+		return this.medalTally;
+	}
+
+	/**
+	 * @return The id of the update that produced a tally change, or null.
+	 */
+	public UpdateId getUpdateId() {
+		return this.updateId;
+	}
+}
@@ -0,0 +1,54 @@
+package server;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A batch of changes returned to a follower of the {@link ChangeFeed}. When
+ * the follower asked for an offset the feed no longer holds, the batch is a
+ * resync: the whole current state of the database, expressed as changes,
+ * along with the updates already credited in the tallies.
+ *
+ * @author aravind
+ *
+ */
+public class ChangeBatch implements Serializable {
+	private static final long serialVersionUID = 8133794105298214447L;
+
+	private List<Change> changes;
+	private long nextOffset;
+	private boolean resync;
+	private ProducerSequences tallySequences;
+
+	public ChangeBatch(List<Change> changes, long nextOffset, boolean resync) {
+		this.changes = changes;
+		this.nextOffset = nextOffset;
+		this.resync = resync;
+	}
+
+	public List<Change> getChanges() {
+		return this.changes;
+	}
+
+	/**
+	 * @return The offset to ask for in the next request.
+	 */
+	public long getNextOffset() {
+		return this.nextOffset;
+	}
+
+	public boolean isResync() {
+		return this.resync;
+	}
+
+	/**
+	 * @return The updates credited in the tallies, if this batch is a resync.
+	 */
+	public ProducerSequences getTallySequences() {
+		return this.tallySequences;
+	}
+
+	public void setTallySequences(ProducerSequences tallySequences) {
+		this.tallySequences = tallySequences;
+	}
+}
@@ -0,0 +1,69 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most recent changes applied to the Orgetorix database, in the order
+ * they were applied, for standbys to tail. Each change is given the next
+ * offset; only the last CAPACITY changes are kept, and a follower that falls
+ * further behind must resync from the whole state.
+ *
+ * Offsets start from a value seeded from the clock, so an offset handed out
+ * by an earlier run of the primary is never mistaken for one of this run.
+ *
+ * @author aravind
+ *
+ */
+public class ChangeFeed {
+	private static int CAPACITY = 4096;
+
+	private Change[] changes;
+	private long firstOffset;
+	private long nextOffset;
+
+	public ChangeFeed() {
+		this.changes = new Change[CAPACITY];
+		this.firstOffset = System.currentTimeMillis() << 16;
+		this.nextOffset = this.firstOffset;
+	}
+
+	/**
+	 * Appends a change to the feed. Callers publish while still holding the
+	 * lock under which they applied the change, so the feed has the same
+	 * order as the database.
+	 *
+	 * @param change
+	 */
+	public synchronized void publish(Change change) {
+		change.setOffset(this.nextOffset);
+		this.changes[(int) (this.nextOffset % CAPACITY)] = change;
+		this.nextOffset++;
+	}
+
+	public synchronized long getNextOffset() {
+		return this.nextOffset;
+	}
+
+	/**
+	 * @param offset
+	 *            The offset of the first change wanted.
+	 * @param maxChanges
+	 * @return Up to maxChanges changes from offset onwards, or null if the feed
+	 *         no longer holds, or never issued, that offset.
+	 */
+	public synchronized List<Change> getChangesSince(long offset,
+			int maxChanges) {
+		long oldestOffset = Math.max(this.firstOffset, this.nextOffset
+				- CAPACITY);
+		if (offset < oldestOffset || offset > this.nextOffset) {
+			return null;
+		}
+		int count = (int) Math.min(maxChanges, this.nextOffset - offset);
+		List<Change> batch = new ArrayList<Change>(count);
+		for (long i = offset; i < offset + count; i++) {
+			batch.add(this.changes[(int) (i % CAPACITY)]);
+		}
+		return batch;
+	}
+}
@@ -0,0 +1,40 @@
+package server;
+
+import java.rmi.RemoteException;
+
+/**
+ * Keeps the caches of an Obelix in change feed mode up to date by tailing the
+ * change feed of every Orgetorix shard. A shard that cannot be reached is
+ * looked up again on the next poll, and its feed is read from the start of its
+ * current state.
+ * 
+ * @author aravind
+ * 
+ */
+public class ChangeFeedFollower implements Runnable {
+
+	private Obelix obelixInstance;
+	private static int POLL_INTERVAL = 100;
+
+	public ChangeFeedFollower(Obelix obelixInstance) {
+		this.obelixInstance = obelixInstance;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				if (obelixInstance.followChangeFeed() > 0) {
+					continue;
+				}
+			} catch (RemoteException e) {
+				System.err.println("Change feed unreachable, retrying.");
+			}
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the group commits made by a {@link GroupCommitter}: the
+ * number and size of the batches flushed, and the latency seen by writers
+ * from submission to acknowledgement.
+ *
+ * @author aravind
+ *
+ */
+public class CommitStatistics {
+	private AtomicLong batches = new AtomicLong();
+	private AtomicLong writes = new AtomicLong();
+	private AtomicLong maxBatchSize = new AtomicLong();
+	private AtomicLong totalLatency = new AtomicLong();
+	private AtomicLong maxLatency = new AtomicLong();
+
+	/**
+	 * Records a flushed batch.
+	 *
+	 * @param batchSize
+	 */
+	public void recordBatch(int batchSize) {
+		this.batches.incrementAndGet();
+		this.writes.addAndGet(batchSize);
+		updateMax(this.maxBatchSize, batchSize);
+	}
+
+	/**
+	 * Records the commit latency of a single write.
+	 *
+	 * @param latencyNanos
+	 */
+	public void recordLatency(long latencyNanos) {
+		this.totalLatency.addAndGet(latencyNanos);
+		updateMax(this.maxLatency, latencyNanos);
+	}
+
+	public long getBatches() {
+		return this.batches.get();
+	}
+
+	public long getWrites() {
+		return this.writes.get();
+	}
+
+	public double getAverageBatchSize() {
+		long batches = this.batches.get();
+		return (batches == 0) ? 0 : (double) this.writes.get() / batches;
+	}
+
+	public long getMaxBatchSize() {
+		return this.maxBatchSize.get();
+	}
+
+	/**
+	 * @return The average commit latency in milliseconds.
+	 */
+	public double getAverageLatency() {
+		long writes = this.writes.get();
+		return (writes == 0) ? 0 : this.totalLatency.get() / 1e6 / writes;
+	}
+
+	/**
+	 * @return The maximum commit latency in milliseconds.
+	 */
+	public double getMaxLatency() {
+		return this.maxLatency.get() / 1e6;
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d writes in %d batches (average %.2f, max %d),"
+				+ " commit latency average %.3f ms, max %.3f ms.",
+				getWrites(), getBatches(), getAverageBatchSize(),
+				getMaxBatchSize(), getAverageLatency(), getMaxLatency());
+	}
+}
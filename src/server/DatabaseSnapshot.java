@@ -0,0 +1,119 @@
+package server;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import base.Athlete;
+import base.EventCategories;
+import base.NationCategories;
+import base.Results;
+import base.Tally;
+
+/**
+ * A checkpoint of the Orgetorix database. Holds the scores, results and medal
+ * tallies as of the checkpoint, the updates already credited in the tallies,
+ * the last scores applied from each producer by event, the number of tally
+ * updates logged so far, and the first {@link UpdateLog} segment of each
+ * {@link LogPartition} whose updates are not yet reflected in it. It also
+ * records the shard the database holds, so that it is not recovered under
+ * another shard layout.
+ *
+ * @author aravind
+ *
+ */
+public class DatabaseSnapshot implements Serializable {
+	private static final long serialVersionUID = 1742300685283441853L;
+
+	private HashMap<EventCategories, List<Athlete>> scores;
+	private HashMap<EventCategories, Results> results;
+	private HashMap<NationCategories, Tally> medalTallies;
+	private HashMap<String, Integer> firstSegments;
+	private ProducerSequences tallySequences;
+	private HashMap<EventCategories, Map<String, Long>> scoreSequences;
+	private long tallyUpdates;
+	private int shardIndex = 0;
+	private int shardCount = 1;
+
+	public DatabaseSnapshot() {
+		this.scores = new HashMap<EventCategories, List<Athlete>>();
+		this.results = new HashMap<EventCategories, Results>();
+		this.medalTallies = new HashMap<NationCategories, Tally>();
+		this.firstSegments = new HashMap<String, Integer>();
+		this.tallySequences = new ProducerSequences();
+		this.scoreSequences = new HashMap<EventCategories, Map<String, Long>>();
+	}
+
+	public Map<EventCategories, List<Athlete>> getScores() {
+		return this.scores;
+	}
+
+	public Map<EventCategories, Results> getResults() {
+		return this.results;
+	}
+
+	public Map<NationCategories, Tally> getMedalTallies() {
+		return this.medalTallies;
+	}
+
+	public ProducerSequences getTallySequences() {
+		return this.tallySequences;
+	}
+
+	public void setTallySequences(ProducerSequences tallySequences) {
+		this.tallySequences = tallySequences;
+	}
+
+	/**
+	 * @return The sequence number of the last scores applied from each
+	 *         producer, by event.
+	 */
+	public Map<EventCategories, Map<String, Long>> getScoreSequences() {
+		return this.scoreSequences;
+	}
+
+	/**
+	 * @return The number of tally updates logged up to the checkpoint.
+	 */
+	public long getTallyUpdates() {
+		return this.tallyUpdates;
+	}
+
+	public void setTallyUpdates(long tallyUpdates) {
+		this.tallyUpdates = tallyUpdates;
+	}
+
+	public int getShardIndex() {
+		return this.shardIndex;
+	}
+
+	public int getShardCount() {
+		return this.shardCount;
+	}
+
+	public void setShard(int shardIndex, int shardCount) {
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * Returns the first segment of a partition to replay on top of this
+	 * snapshot.
+	 * 
+	 * @param partitionName
+	 * @return int
+	 */
+	public int getFirstSegment(String partitionName) {
+		Integer firstSegment = this.firstSegments.get(partitionName);
+		return (firstSegment == null) ? 0 : firstSegment;
+	}
+
+	public void setFirstSegment(String partitionName, int firstSegment) {
+		this.firstSegments.put(partitionName, firstSegment);
+	}
+
+	public Map<String, Integer> getFirstSegments() {
+		return this.firstSegments;
+	}
+}
@@ -0,0 +1,201 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A dataset of {@link FileStorageEngine}, rewritten whole on every change,
+ * kept in two slot files that stay open and are written in turn. Each slot
+ * holds one serialized image of the dataset behind a header of its
+ * generation, length and checksum. A write goes to the slot not holding the
+ * latest image and is forced before it counts, so a crash part way through
+ * leaves the previous image intact, without the open, rename and close of a
+ * temporary file per write.
+ *
+ * A database written before slots were used is read from its single file,
+ * which is deleted once the dataset is first written to a slot.
+ *
+ * @author aravind
+ *
+ */
+public class DatasetFile {
+	private static int HEADER_SIZE = 8 + 4 + 4;
+	private static int SLOTS = 2;
+
+	/**
+	 * A complete image read back from a slot.
+	 */
+	private static class Image {
+		private long generation;
+		private byte[] payload;
+
+		private Image(long generation, byte[] payload) {
+			this.generation = generation;
+			this.payload = payload;
+		}
+	}
+
+	private String fileName;
+	private FileChannel[] slots;
+	private int currentSlot = -1;
+	private long generation;
+
+	/**
+	 * Opens the slot files of a dataset, creating them if needed.
+	 *
+	 * @param fileName
+	 * @throws IOException
+	 */
+	public DatasetFile(String fileName) throws IOException {
+		this.fileName = fileName;
+		this.slots = new FileChannel[SLOTS];
+		for (int slot = 0; slot < SLOTS; slot++) {
+			this.slots[slot] = new RandomAccessFile(getSlotFileName(slot),
+					"rw").getChannel();
+			Image image = readImage(slot);
+			if (image != null && image.generation >= this.generation) {
+				this.generation = image.generation;
+				this.currentSlot = slot;
+			}
+		}
+	}
+
+	private String getSlotFileName(int slot) {
+		return this.fileName + "." + slot;
+	}
+
+	/**
+	 * @param slot
+	 * @return The image in the slot, or null if it is empty or was not
+	 *         completely written.
+	 * @throws IOException
+	 */
+	private Image readImage(int slot) throws IOException {
+		FileChannel channel = this.slots[slot];
+		if (channel.size() < HEADER_SIZE) {
+			return null;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, 0);
+		header.flip();
+		long generation = header.getLong();
+		int length = header.getInt();
+		int checksum = header.getInt();
+		if (length < 0 || HEADER_SIZE + (long) length > channel.size()) {
+			return null;
+		}
+		ByteBuffer payload = ByteBuffer.allocate(length);
+		readFully(channel, payload, HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(payload.array(), 0, length);
+		if ((int) crc.getValue() != checksum) {
+			return null;
+		}
+		return new Image(generation, payload.array());
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of dataset file.");
+			}
+		}
+	}
+
+	/**
+	 * Deserializes the objects of the latest image. An image written before
+	 * the dataset gained its trailing objects leaves them null.
+	 *
+	 * @param count
+	 * @return The objects read, all null if the dataset was never written.
+	 * @throws IOException
+	 */
+	public synchronized Object[] read(int count) throws IOException {
+		Object[] objects = new Object[count];
+		InputStream image;
+		if (this.currentSlot >= 0) {
+			image = new ByteArrayInputStream(
+					readImage(this.currentSlot).payload);
+		} else if (new File(this.fileName).exists()) {
+			image = new FileInputStream(this.fileName);
+		} else {
+			return objects;
+		}
+		ObjectInputStream in = new ObjectInputStream(image);
+		try {
+			for (int i = 0; i < count; i++) {
+				objects[i] = in.readObject();
+			}
+		} catch (EOFException e) {
+			// An older image, with fewer objects.
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Could not read " + this.fileName + ".", e);
+		} finally {
+			in.close();
+		}
+		return objects;
+	}
+
+	/**
+	 * Serializes the objects as the new image of the dataset and forces it to
+	 * disk.
+	 *
+	 * @param objects
+	 * @param bufferPool
+	 *            Supplies the direct buffer the image is written from.
+	 * @throws IOException
+	 */
+	public synchronized void write(Object[] objects,
+			DirectBufferPool bufferPool) throws IOException {
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytesOut);
+		for (Object object : objects) {
+			out.writeObject(object);
+		}
+		out.close();
+		byte[] payload = bytesOut.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+
+		ByteBuffer buffer = bufferPool.acquire(HEADER_SIZE + payload.length);
+		try {
+			buffer.putLong(this.generation + 1);
+			buffer.putInt(payload.length);
+			buffer.putInt((int) crc.getValue());
+			buffer.put(payload);
+			buffer.flip();
+			int slot = (this.currentSlot + 1) % SLOTS;
+			FileChannel channel = this.slots[slot];
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, buffer.position());
+			}
+			channel.truncate(buffer.limit());
+			channel.force(false);
+			if (this.currentSlot < 0) {
+				new File(this.fileName).delete();
+			}
+			this.generation++;
+			this.currentSlot = slot;
+		} finally {
+			bufferPool.release(buffer);
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		for (FileChannel channel : this.slots) {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package server;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the datasets of a {@link FileStorageEngine} in the background, so an
+ * update returns as soon as its write has been accepted under its
+ * {@link Durability}: at once for ASYNC, and once written and forced for GROUP
+ * and SYNC. A SYNC write is started straight away, a GROUP write waits up to
+ * the commit window and an ASYNC one up to the flush interval for others to
+ * join it. Writes are submitted while the engine is locked, so images reach
+ * the writer in the order the dataset changed, and waited for once it is
+ * unlocked, so writers waiting on the same batch do not hold each other up.
+ *
+ * Each write is a whole image of its dataset, so only the latest image
+ * submitted for a dataset is written; earlier ones still waiting are
+ * dropped, and their writers released along with it.
+ *
+ * @author aravind
+ *
+ */
+public class DatasetWriter implements Runnable {
+	private static int POOLED_BUFFERS = 4;
+
+	private Map<DatasetFile, Object[]> pendingWrites;
+	private long submitted;
+	private long durableSubmitted;
+	private long written;
+	private long failedUpTo;
+	private IOException failure;
+	private long deadline = Long.MAX_VALUE;
+	private long firstSubmitTime;
+
+	private long commitWindow;
+	private long flushInterval;
+	private DirectBufferPool bufferPool;
+	private CommitStatistics statistics;
+	private volatile boolean running = true;
+
+	/**
+	 * @param commitWindow
+	 *            How long a GROUP write waits for others, in milliseconds.
+	 * @param flushInterval
+	 *            How long an ASYNC write waits for others, in milliseconds.
+	 */
+	public DatasetWriter(long commitWindow, long flushInterval) {
+		this.pendingWrites = new LinkedHashMap<DatasetFile, Object[]>();
+		this.commitWindow = commitWindow;
+		this.flushInterval = flushInterval;
+		this.bufferPool = new DirectBufferPool(POOLED_BUFFERS);
+		this.statistics = new CommitStatistics();
+	}
+
+	/**
+	 * Submits a new image of a dataset, without waiting for it to be written.
+	 * The objects are serialized later, on the writer thread, so they must not
+	 * be modified once submitted.
+	 *
+	 * @param datasetFile
+	 * @param durability
+	 * @param objects
+	 * @throws IOException
+	 *             If the writer is closed.
+	 */
+	public synchronized void submit(DatasetFile datasetFile,
+			Durability durability, Object... objects) throws IOException {
+		if (!this.running) {
+			throw new IOException("Dataset writer is closed.");
+		}
+		if (this.pendingWrites.isEmpty()) {
+			this.firstSubmitTime = System.nanoTime();
+		}
+		this.pendingWrites.put(datasetFile, objects);
+		long ticket = ++this.submitted;
+		this.deadline = Math.min(this.deadline, System.currentTimeMillis()
+				+ getDelay(durability));
+		if (durability != Durability.ASYNC) {
+			this.durableSubmitted = ticket;
+		}
+		this.notifyAll();
+	}
+
+	/**
+	 * Waits until the SYNC and GROUP writes submitted so far are written.
+	 * Returns at once for ASYNC writes.
+	 *
+	 * @param durability
+	 *            The durability of the writes just submitted by the caller.
+	 * @throws IOException
+	 *             If one of them failed.
+	 */
+	public synchronized void await(Durability durability) throws IOException {
+		if (durability != Durability.ASYNC) {
+			awaitWritten(this.durableSubmitted);
+		}
+	}
+
+	private long getDelay(Durability durability) {
+		switch (durability) {
+		case SYNC:
+			return 0;
+		case GROUP:
+			return this.commitWindow;
+		default:
+			return this.flushInterval;
+		}
+	}
+
+	/**
+	 * Waits until every write submitted so far has been written.
+	 *
+	 * @throws IOException
+	 *             If one of them failed.
+	 */
+	public synchronized void flush() throws IOException {
+		if (this.submitted > this.written) {
+			this.deadline = 0;
+			this.notifyAll();
+			awaitWritten(this.submitted);
+		}
+	}
+
+	private void awaitWritten(long ticket) throws IOException {
+		while (this.written < ticket) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted waiting for a dataset"
+						+ " write.", e);
+			}
+		}
+		if (this.failedUpTo >= ticket) {
+			throw new IOException("Dataset write failed.", this.failure);
+		}
+	}
+
+	public CommitStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Stops the writer once the writes already submitted are written.
+	 */
+	public synchronized void close() {
+		this.running = false;
+		this.deadline = 0;
+		this.notifyAll();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			Map<DatasetFile, Object[]> batch;
+			long ticket;
+			long submitTime;
+			synchronized (this) {
+				long now = System.currentTimeMillis();
+				while (this.pendingWrites.isEmpty() || now < this.deadline) {
+					if (!this.running && this.pendingWrites.isEmpty()) {
+						return;
+					}
+					try {
+						this.wait(this.pendingWrites.isEmpty() ? 0
+								: this.deadline - now);
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+					now = System.currentTimeMillis();
+				}
+				batch = this.pendingWrites;
+				ticket = this.submitted;
+				submitTime = this.firstSubmitTime;
+				this.pendingWrites = new LinkedHashMap<DatasetFile, Object[]>();
+				this.deadline = this.running ? Long.MAX_VALUE : 0;
+			}
+
+			IOException batchFailure = null;
+			for (Map.Entry<DatasetFile, Object[]> pendingWrite : batch
+					.entrySet()) {
+				try {
+					pendingWrite.getKey().write(pendingWrite.getValue(),
+							this.bufferPool);
+				} catch (IOException e) {
+					e.printStackTrace();
+					batchFailure = e;
+				}
+			}
+			this.statistics.recordBatch(batch.size());
+			this.statistics.recordLatency(System.nanoTime() - submitTime);
+
+			synchronized (this) {
+				if (batchFailure != null) {
+					this.failure = batchFailure;
+					this.failedUpTo = ticket;
+				}
+				this.written = ticket;
+				this.notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Reuses direct buffers for file writes. A write through a heap buffer is
+ * first copied by the JVM into a temporary direct buffer, and allocating
+ * direct buffers is slow, so writers take a buffer from the pool and give it
+ * back once written. Buffers are allocated in powers of two, so a dataset
+ * growing a little does not need a new buffer on every write.
+ *
+ * @author aravind
+ *
+ */
+public class DirectBufferPool {
+	private static int MIN_BUFFER_SIZE = 4096;
+
+	private LinkedList<ByteBuffer> freeBuffers;
+	private int maxFreeBuffers;
+
+	/**
+	 * @param maxFreeBuffers
+	 *            The number of buffers kept for reuse. Buffers given back
+	 *            beyond that are left to the garbage collector.
+	 */
+	public DirectBufferPool(int maxFreeBuffers) {
+		this.freeBuffers = new LinkedList<ByteBuffer>();
+		this.maxFreeBuffers = maxFreeBuffers;
+	}
+
+	/**
+	 * @param size
+	 * @return A cleared buffer of at least the given capacity, limited to
+	 *         size.
+	 */
+	public synchronized ByteBuffer acquire(int size) {
+		Iterator<ByteBuffer> iterator = this.freeBuffers.iterator();
+		while (iterator.hasNext()) {
+			ByteBuffer buffer = iterator.next();
+			if (buffer.capacity() >= size) {
+				iterator.remove();
+				buffer.clear();
+				buffer.limit(size);
+				return buffer;
+			}
+		}
+		int capacity = MIN_BUFFER_SIZE;
+		while (capacity < size) {
+			capacity <<= 1;
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+		buffer.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Gives a buffer back once the write using it is complete. The smallest
+	 * buffer is dropped if the pool is full.
+	 *
+	 * @param buffer
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		this.freeBuffers.add(buffer);
+		if (this.freeBuffers.size() > this.maxFreeBuffers) {
+			ByteBuffer smallest = buffer;
+			for (ByteBuffer freeBuffer : this.freeBuffers) {
+				if (freeBuffer.capacity() < smallest.capacity()) {
+					smallest = freeBuffer;
+				}
+			}
+			this.freeBuffers.remove(smallest);
+		}
+	}
+}
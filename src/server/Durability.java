@@ -0,0 +1,41 @@
+package server;
+
+/**
+ * How an Orgetorix write is made durable before it is acknowledged. SYNC -
+ * the write is synced to disk on its own. GROUP - the write is synced together
+ * with the other writes arriving within the commit window. ASYNC - the write
+ * is acknowledged once it is applied in memory and queued, and a background
+ * flusher syncs it later.
+ *
+ * @author aravind
+ *
+ */
+public enum Durability {
+	SYNC("sync"), GROUP("group"), ASYNC("async");
+
+	private String value;
+
+	Durability(String mode) {
+		this.value = mode;
+	}
+
+	public String getMode() {
+		return this.value;
+	}
+
+	/**
+	 * Returns the durability named by the given mode.
+	 *
+	 * @param mode
+	 * @return Durability
+	 */
+	public static Durability fromMode(String mode) {
+		for (Durability durability : Durability.values()) {
+			if (durability.value.equalsIgnoreCase(mode)) {
+				return durability;
+			}
+		}
+		throw new IllegalArgumentException("Unknown durability mode " + mode
+				+ ".");
+	}
+}
@@ -0,0 +1,179 @@
+package server;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import server.LogRecord.RecordType;
+import base.Athlete;
+import base.EventCategories;
+import base.NationCategories;
+import base.Results;
+import base.ScoreSample;
+import base.Tally;
+
+/**
+ * The original Orgetorix persistence as a {@link StorageEngine}: each dataset
+ * is a serialized file, rewritten whole every time the dataset changes. The
+ * datasets are also held in memory, see {@link MemoryStorageEngine}, so reads
+ * never touch disk. The medal tallies file also holds the tally updates
+ * already credited, and the scores file the last scores applied from each
+ * producer, so retried updates are recognised after a restart. Score
+ * histories are kept in {@link ScoreHistory} files.
+ *
+ * The dataset files are kept open, see {@link DatasetFile}, and written by a
+ * {@link DatasetWriter} thread, so an update waits only as long as the
+ * durability configured for its type requires.
+ *
+ * @author aravind
+ *
+ */
+public class FileStorageEngine extends MemoryStorageEngine {
+	private static String SCORE_FILE_PREFIX = "Scores";
+	private static String RESULT_FILE_PREFIX = "Results";
+	private static String TALLY_FILE_PREFIX = "Tallies";
+	private static String HISTORY_FILE_PREFIX = "History";
+	private static String FILE_SUFFIX = ".ser";
+
+	private DatasetFile scoreFile;
+	private DatasetFile resultFile;
+	private DatasetFile tallyFile;
+	private Map<EventCategories, ScoreHistory> histories;
+	private StorageConfiguration configuration;
+	private DatasetWriter writer;
+	private Thread writerThread;
+
+	/**
+	 * Opens the database, reading back the datasets of an existing one with
+	 * the same name.
+	 *
+	 * @param fileLocation
+	 * @param dbName
+	 * @param configuration
+	 *            Gives the durability of each type of update.
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public FileStorageEngine(String fileLocation, String dbName,
+			StorageConfiguration configuration) throws IOException {
+		this.configuration = configuration;
+		this.scoreFile = new DatasetFile(fileLocation + SCORE_FILE_PREFIX
+				+ dbName + FILE_SUFFIX);
+		this.resultFile = new DatasetFile(fileLocation + RESULT_FILE_PREFIX
+				+ dbName + FILE_SUFFIX);
+		this.tallyFile = new DatasetFile(fileLocation + TALLY_FILE_PREFIX
+				+ dbName + FILE_SUFFIX);
+		this.histories = new EnumMap<EventCategories, ScoreHistory>(
+				EventCategories.class);
+		for (EventCategories eventName : EventCategories.values()) {
+			this.histories.put(eventName, new ScoreHistory(fileLocation
+					+ HISTORY_FILE_PREFIX + dbName + "." + eventName.name()));
+		}
+
+		Object[] tallies = this.tallyFile.read(2);
+		Object[] scores = this.scoreFile.read(2);
+		Object[] results = this.resultFile.read(1);
+		restore((Map<EventCategories, List<Athlete>>) scores[0],
+				(Map<EventCategories, Results>) results[0],
+				(Map<NationCategories, Tally>) tallies[0],
+				(ProducerSequences) tallies[1],
+				(Map<EventCategories, Map<String, Long>>) scores[1]);
+
+		this.writer = new DatasetWriter(configuration.getCommitWindow(),
+				configuration.getFlushInterval());
+		this.writerThread = new Thread(this.writer, "DatasetWriter-" + dbName);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * The hooks submit a copy of the dataset, which the writer serializes
+	 * later. The values themselves are never modified once stored, so copying
+	 * the map is enough, except for the score sequences, which are updated in
+	 * place.
+	 */
+	@Override
+	protected void scoresChanged(Map<EventCategories, List<Athlete>> scores,
+			Map<EventCategories, Map<String, Long>> lastScoreSequences)
+			throws IOException {
+		EnumMap<EventCategories, Map<String, Long>> sequencesCopy = new EnumMap<EventCategories, Map<String, Long>>(
+				EventCategories.class);
+		for (Map.Entry<EventCategories, Map<String, Long>> entry : lastScoreSequences
+				.entrySet()) {
+			sequencesCopy.put(entry.getKey(), new HashMap<String, Long>(
+					entry.getValue()));
+		}
+		this.writer.submit(this.scoreFile, getDurability(RecordType.SCORES),
+				new EnumMap<EventCategories, List<Athlete>>(scores),
+				sequencesCopy);
+	}
+
+	@Override
+	protected void resultsChanged(Map<EventCategories, Results> results)
+			throws IOException {
+		this.writer.submit(this.resultFile, getDurability(RecordType.RESULTS),
+				new EnumMap<EventCategories, Results>(results));
+	}
+
+	@Override
+	protected void talliesChanged(Map<NationCategories, Tally> medalTallies,
+			ProducerSequences tallySequences) throws IOException {
+		this.writer.submit(this.tallyFile, getDurability(RecordType.TALLIES),
+				new EnumMap<NationCategories, Tally>(medalTallies),
+				tallySequences.copy());
+	}
+
+	@Override
+	protected void awaitChanged(RecordType type) throws IOException {
+		this.writer.await(getDurability(type));
+	}
+
+	private Durability getDurability(RecordType type) {
+		return this.configuration.getDurability(type);
+	}
+
+	@Override
+	protected void appendHistory(EventCategories eventName, long timestamp,
+			List<Athlete> currentScores) throws IOException {
+		this.histories.get(eventName).append(timestamp, currentScores);
+	}
+
+	@Override
+	protected List<ScoreSample> readHistory(EventCategories eventName,
+			long fromTimestamp, long toTimestamp) throws IOException {
+		return this.histories.get(eventName).getRange(fromTimestamp,
+				toTimestamp);
+	}
+
+	/**
+	 * Waits until every dataset change so far has been written.
+	 */
+	@Override
+	public void checkpoint() throws IOException {
+		this.writer.flush();
+	}
+
+	@Override
+	public String getStatistics() {
+		return super.getStatistics() + " Dataset writes: "
+				+ this.writer.getStatistics();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.writer.close();
+		try {
+			this.writerThread.join();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted closing the database.", e);
+		}
+		this.scoreFile.close();
+		this.resultFile.close();
+		this.tallyFile.close();
+		for (ScoreHistory history : this.histories.values()) {
+			history.close();
+		}
+	}
+}
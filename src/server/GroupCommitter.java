@@ -0,0 +1,189 @@
+package server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects log records submitted by concurrent writers and commits them to the
+ * {@link UpdateLog} in batches. A batch is flushed once the commit window has
+ * passed since its first record or once it reaches the maximum batch size;
+ * every writer in the batch is acknowledged only after the single sync that
+ * makes the whole batch durable.
+ *
+ * @author aravind
+ *
+ */
+public class GroupCommitter implements Runnable {
+
+	/**
+	 * Receives each committed record, in log order, before its writer is
+	 * acknowledged.
+	 */
+	public interface CommitListener {
+		public void committed(LogRecord record);
+	}
+
+	/**
+	 * A record waiting to be committed, and the writer waiting on it.
+	 */
+	private static class PendingCommit {
+		private LogRecord record;
+		private byte[] encodedRecord;
+		private long submitTime;
+		private boolean done;
+		private IOException failure;
+
+		private PendingCommit(LogRecord record, byte[] encodedRecord) {
+			this.record = record;
+			this.encodedRecord = encodedRecord;
+			this.submitTime = System.nanoTime();
+		}
+
+		private synchronized void complete(IOException failure) {
+			this.failure = failure;
+			this.done = true;
+			this.notifyAll();
+		}
+
+		private synchronized void await() throws IOException {
+			boolean interrupted = false;
+			while (!this.done) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (this.failure != null) {
+				throw new IOException("Group commit failed.", this.failure);
+			}
+		}
+	}
+
+	private LinkedBlockingQueue<PendingCommit> pendingCommits;
+	private UpdateLog updateLog;
+	private CommitListener listener;
+	private long commitWindow;
+	private int maxBatchSize;
+	private CommitStatistics statistics;
+	private volatile boolean running = true;
+
+	public GroupCommitter(UpdateLog updateLog, CommitListener listener,
+			long commitWindow, int maxBatchSize) {
+		this.pendingCommits = new LinkedBlockingQueue<PendingCommit>();
+		this.updateLog = updateLog;
+		this.listener = listener;
+		this.commitWindow = commitWindow;
+		this.maxBatchSize = maxBatchSize;
+		this.statistics = new CommitStatistics();
+	}
+
+	/**
+	 * Submits a record and blocks until the batch containing it has been made
+	 * durable and applied.
+	 *
+	 * @param record
+	 * @throws IOException
+	 */
+	public void commit(LogRecord record) throws IOException {
+		if (!this.running) {
+			throw new IOException("Update log is closed.");
+		}
+		PendingCommit pendingCommit = new PendingCommit(record,
+				UpdateLog.encode(record));
+		this.pendingCommits.add(pendingCommit);
+		// The committer may have drained the queue for the last time since
+		// running was checked; unless it took the commit, take it back.
+		if (!this.running && this.pendingCommits.remove(pendingCommit)) {
+			throw new IOException("Update log is closed.");
+		}
+		pendingCommit.await();
+	}
+
+	public CommitStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Stops the committer once the records already submitted are committed.
+	 */
+	public void shutdown() {
+		this.running = false;
+	}
+
+	@Override
+	public void run() {
+		List<PendingCommit> batch = new ArrayList<PendingCommit>();
+		while (this.running || !this.pendingCommits.isEmpty()) {
+			try {
+				PendingCommit first = this.pendingCommits.poll(100,
+						TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = first.submitTime
+						+ TimeUnit.MILLISECONDS.toNanos(this.commitWindow);
+				while (batch.size() < this.maxBatchSize) {
+					long remaining = deadline - System.nanoTime();
+					PendingCommit next = (remaining > 0) ? this.pendingCommits
+							.poll(remaining, TimeUnit.NANOSECONDS)
+							: this.pendingCommits.poll();
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				flush(batch);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			} finally {
+				batch.clear();
+			}
+		}
+
+		PendingCommit abandoned = null;
+		while ((abandoned = this.pendingCommits.poll()) != null) {
+			abandoned.complete(new IOException("Update log is closed."));
+		}
+	}
+
+	/**
+	 * Writes and syncs a batch, applies its records and acknowledges its
+	 * writers.
+	 *
+	 * @param batch
+	 */
+	private void flush(List<PendingCommit> batch) {
+		List<byte[]> encodedRecords = new ArrayList<byte[]>(batch.size());
+		for (PendingCommit pendingCommit : batch) {
+			encodedRecords.add(pendingCommit.encodedRecord);
+		}
+
+		IOException failure = null;
+		synchronized (this.updateLog) {
+			try {
+				this.updateLog.appendAll(encodedRecords);
+				for (PendingCommit pendingCommit : batch) {
+					this.listener.committed(pendingCommit.record);
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		this.statistics.recordBatch(batch.size());
+		long commitTime = System.nanoTime();
+		for (PendingCommit pendingCommit : batch) {
+			this.statistics.recordLatency(commitTime
+					- pendingCommit.submitTime);
+			pendingCommit.complete(failure);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package server;
+
+import java.rmi.RemoteException;
+
+import util.ServiceComponent;
+
+/**
+ * Periodically sends a heartbeat to {@link ServiceFinder} on behalf of a
+ * server, which is removed from the service list once its heartbeats stop.
+ */
+public class HeartbeatNotifier implements Runnable {
+
+	private ServiceComponent serviceInstance;
+	private static int BEAT_PERIOD = 3000;
+
+	public HeartbeatNotifier() {
+	}
+
+	public HeartbeatNotifier(ServiceComponent serviceInstance) {
+		this.serviceInstance = serviceInstance;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				serviceInstance.beat(serviceInstance.getServerName());
+				// System.err.println("Sending heartbeat msg.");
+				Thread.sleep(BEAT_PERIOD);
+			} catch (RemoteException e) {
+				e.printStackTrace();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package server;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An independently written part of the Orgetorix database: an
+ * {@link UpdateLog} with its own group committer and write-behind queue.
+ * Writes to different partitions never wait on each other's locks or syncs.
+ *
+ * @author aravind
+ *
+ */
+public class LogPartition {
+	private String name;
+	private UpdateLog updateLog;
+	private GroupCommitter.CommitListener applier;
+	private GroupCommitter groupCommitter;
+	private Thread groupCommitThread;
+	private WriteBehindQueue writeBehindQueue;
+	private Thread writeBehindThread;
+
+	/**
+	 * Opens the partition's log. Records already in the log are not applied
+	 * until {@link #replay(int)} is called.
+	 *
+	 * @param name
+	 * @param segmentPrefix
+	 * @param configuration
+	 * @param applier
+	 *            Applies each committed record to the in-memory state.
+	 * @throws IOException
+	 */
+	public LogPartition(String name, String segmentPrefix,
+			StorageConfiguration configuration,
+			GroupCommitter.CommitListener applier) throws IOException {
+		this.name = name;
+		this.applier = applier;
+		this.updateLog = new UpdateLog(segmentPrefix);
+		this.groupCommitter = new GroupCommitter(this.updateLog, applier,
+				configuration.getCommitWindow(),
+				configuration.getMaxBatchSize());
+		this.groupCommitThread = new Thread(this.groupCommitter, name
+				+ "GroupCommitThread");
+		this.groupCommitThread.setDaemon(true);
+		this.groupCommitThread.start();
+		this.writeBehindQueue = new WriteBehindQueue(this.updateLog, applier,
+				configuration.getWriteBehindCapacity(),
+				configuration.getFlushInterval());
+		this.writeBehindThread = new Thread(this.writeBehindQueue, name
+				+ "WriteBehindThread");
+		this.writeBehindThread.setDaemon(true);
+		this.writeBehindThread.start();
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Applies the records logged from firstSegment onwards.
+	 *
+	 * @param firstSegment
+	 * @return The number of records replayed.
+	 * @throws IOException
+	 */
+	public int replay(int firstSegment) throws IOException {
+		List<LogRecord> records = this.updateLog.replay(firstSegment);
+		for (LogRecord record : records) {
+			this.applier.committed(record);
+		}
+		return records.size();
+	}
+
+	/**
+	 * Writes a record with the given durability. Synchronous writes are synced
+	 * on their own, group writes share a sync with concurrent writers, and
+	 * asynchronous writes are applied immediately and flushed in the
+	 * background.
+	 *
+	 * @param record
+	 * @param durability
+	 * @throws IOException
+	 */
+	public void log(LogRecord record, Durability durability)
+			throws IOException {
+		switch (durability) {
+		case SYNC:
+			byte[] encodedRecord = UpdateLog.encode(record);
+			synchronized (this.updateLog) {
+				this.updateLog.appendAll(Collections
+						.singletonList(encodedRecord));
+				this.applier.committed(record);
+			}
+			break;
+		case GROUP:
+			this.groupCommitter.commit(record);
+			break;
+		case ASYNC:
+			this.writeBehindQueue.submit(record);
+			break;
+		}
+	}
+
+	/**
+	 * Starts a new log segment and captures the partition's state as of the
+	 * end of the previous one. Writes applied in memory but still queued are
+	 * flushed into the segment being retired, and no more are applied until
+	 * the capture has run.
+	 *
+	 * @param capture
+	 *            Copies the state of the partition into a snapshot.
+	 * @return The first segment not covered by the captured state.
+	 * @throws IOException
+	 */
+	public int checkpoint(Runnable capture) throws IOException {
+		synchronized (this.updateLog) {
+			synchronized (this.writeBehindQueue) {
+				this.writeBehindQueue.flush();
+				int firstSegment = this.updateLog.roll();
+				capture.run();
+				return firstSegment;
+			}
+		}
+	}
+
+	/**
+	 * Deletes the segments below firstSegment.
+	 *
+	 * @param firstSegment
+	 */
+	public void truncateBefore(int firstSegment) {
+		this.updateLog.truncateBefore(firstSegment);
+	}
+
+	/**
+	 * @return A summary of the group commit and write-behind counters.
+	 */
+	public String getStatistics() {
+		return this.name + " group commit: "
+				+ this.groupCommitter.getStatistics() + " Write-behind: "
+				+ this.writeBehindQueue.getStatistics();
+	}
+
+	/**
+	 * Stops the committers once the writes already submitted are durable and
+	 * closes the log.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		this.groupCommitter.shutdown();
+		this.writeBehindQueue.shutdown();
+		try {
+			this.groupCommitThread.join();
+			this.writeBehindThread.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		this.updateLog.close();
+	}
+}
@@ -0,0 +1,128 @@
+package server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import base.Athlete;
+import base.Event;
+import base.EventCategories;
+import base.Results;
+import base.UpdateId;
+
+/**
+ * A single update appended to the Orgetorix {@link UpdateLog}. Each record
+ * describes one mutation of the database, which can be replayed to rebuild the
+ * in-memory state, and carries the id of the update it came from, if any, so
+ * that replaying it also rebuilds the record of which updates were applied.
+ *
+ * @author aravind
+ *
+ */
+public class LogRecord implements Serializable {
+	private static final long serialVersionUID = 6502795471838260375L;
+
+	/**
+	 * The kinds of updates recorded in the log.
+	 */
+	public enum RecordType {
+		SCORES, RESULTS, TALLIES
+	}
+
+	private RecordType type;
+	private EventCategories eventName;
+	private ArrayList<Athlete> scores;
+	private Results eventResult;
+	private UpdateId updateId;
+
+	private LogRecord(RecordType type) {
+		this.type = type;
+	}
+
+	/**
+	 * @param updateId
+	 * @return This record, carrying the id of the update it came from.
+	 */
+	public LogRecord withUpdateId(UpdateId updateId) {
+		this.updateId = updateId;
+		return this;
+	}
+
+	/**
+	 * Creates a record replacing the current scores of an event.
+	 *
+	 * @param eventName
+	 * @param scores
+	 * @return LogRecord
+	 */
+	public static LogRecord scoreUpdate(EventCategories eventName,
+			List<Athlete> scores) {
+		LogRecord record = new LogRecord(RecordType.SCORES);
+		record.eventName = eventName;
+		record.scores = new ArrayList<Athlete>(scores);
+		return record;
+	}
+
+	/**
+	 * Creates a record setting the results of a completed event. Only the
+	 * results are logged, not the athletes of the event.
+	 *
+	 * @param completedEvent
+	 * @return LogRecord
+	 */
+	public static LogRecord resultUpdate(Event completedEvent) {
+		return resultUpdate(completedEvent.getName(),
+				completedEvent.getResult());
+	}
+
+	/**
+	 * Creates a record setting the results of an event.
+	 *
+	 * @param eventName
+	 * @param eventResult
+	 * @return LogRecord
+	 */
+	public static LogRecord resultUpdate(EventCategories eventName,
+			Results eventResult) {
+		LogRecord record = new LogRecord(RecordType.RESULTS);
+		record.eventName = eventName;
+		record.eventResult = eventResult;
+		return record;
+	}
+
+	/**
+	 * Creates a record crediting the winners of an event in the medal tallies.
+	 *
+	 * @param eventResult
+	 * @return LogRecord
+	 */
+	public static LogRecord tallyUpdate(Results eventResult) {
+		LogRecord record = new LogRecord(RecordType.TALLIES);
+		record.eventResult = eventResult;
+		return record;
+	}
+
+	public RecordType getType() {
+		return this.type;
+	}
+
+	public EventCategories getEventName() {
+		return this.eventName;
+	}
+
+	public ArrayList<Athlete> getScores() {
+		return this.scores;
+	}
+
+	public Results getEventResult() {
+		return this.eventResult;
+	}
+
+	/**
+	 * @return The id of the update the record came from, or null if it was
+	 *         not given one.
+	 */
+	public UpdateId getUpdateId() {
+		return this.updateId;
+	}
+}
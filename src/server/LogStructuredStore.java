@@ -0,0 +1,845 @@
+package server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import base.Athlete;
+import base.Event;
+import base.EventCategories;
+import base.GamesSnapshot;
+import base.MedalCategories;
+import base.NationCategories;
+import base.Results;
+import base.ScoreSample;
+import base.Tally;
+import base.UpdateId;
+import base.Versioned;
+import server.LogRecord.RecordType;
+import server.StorageConfiguration.StorageMode;
+
+/**
+ * Log-structured {@link StorageEngine}, the default used by Orgetorix. The current scores, results
+ * and medal tallies are held in memory, and every update is appended to a log
+ * before it is applied. Reads are served from memory and never wait on disk.
+ * The scores of each event are kept in their own {@link ScoreSegment}, while
+ * results and tallies share the main {@link LogPartition}, so updates to
+ * different events never contend for the same files or locks. Checkpoints
+ * periodically write a {@link DatabaseSnapshot} and truncate the logs behind
+ * it, so that recovery only replays the updates made since the last
+ * checkpoint. In MAPPED storage mode, results and tallies are kept in a
+ * {@link MappedTallyStore} instead. Results bypass the log; tally updates are
+ * still logged, so the ids they carry are as durable as the increments, and
+ * are applied to the mapped store from the log.
+ *
+ * An update may carry an {@link UpdateId}, so that one sent again by its
+ * producer is not applied twice. Medal tallies are incremented, so a tally
+ * update is credited only if its id has not been seen; scores and results
+ * replace the previous value, so sending them again is harmless, and scores
+ * older than the last applied from the same producer are dropped by their
+ * {@link ScoreSegment}. Both records of the updates applied are checkpointed
+ * and rebuilt by replaying the log.
+ *
+ * @author aravind
+ *
+ */
+public class LogStructuredStore implements StorageEngine {
+	private static String LOG_FILE_PREFIX = "Log";
+	private static String SCORE_FILE_PREFIX = "Scores";
+	private static String SNAPSHOT_FILE_PREFIX = "Snapshot";
+	private static String TALLY_FILE_PREFIX = "Tallies";
+	private static String HISTORY_FILE_PREFIX = "History";
+	private static String TEMP_FILE_SUFFIX = ".tmp";
+	private static String MAIN_PARTITION_NAME = "Main";
+
+	private StorageConfiguration configuration;
+	private String snapshotFileName;
+
+	/**
+	 * Log of the results and tally updates.
+	 */
+	private LogPartition mainPartition;
+
+	/**
+	 * Holds the results and tallies instead of the log when the storage mode
+	 * is MAPPED, and is null otherwise.
+	 */
+	private MappedTallyStore mappedTallyStore;
+
+	/**
+	 * In-memory state of the database, rebuilt by replaying the logs. Results
+	 * are indexed by event, so a lookup never scans or touches disk.
+	 */
+	private Map<EventCategories, ScoreSegment> scoreSegments;
+	private Map<EventCategories, Results> results;
+	private Map<NationCategories, Tally> medalTallies;
+
+	/**
+	 * The tally updates already credited, rebuilt along with the tallies from
+	 * the snapshot and log. It is changed only under the tally write lock.
+	 */
+	private volatile ProducerSequences tallySequences;
+
+	/**
+	 * The number of tally records applied, which numbers them in log order.
+	 * In MAPPED mode the mapped store records the number of the last one it
+	 * applied, so a record replayed after a restart is applied to it only if
+	 * it had not been before. Changed only under the tally write lock.
+	 */
+	private long tallyUpdates;
+
+	/**
+	 * Each dataset has its own read/write lock, so readers never wait on each
+	 * other or on writes to another dataset. Published results and tallies are
+	 * never modified afterwards; an update replaces them with a new object.
+	 */
+	private ReadWriteLock resultsLock;
+	private ReadWriteLock talliesLock;
+
+	/**
+	 * Every applied update gives its record a new version, so a reader holding
+	 * the current version of a record can be told it has not changed. The
+	 * counter is seeded from the clock at startup, so versions issued after a
+	 * restart are never mistaken for ones issued before it, and every record
+	 * starts with a version of its own, whether it was recovered or is empty.
+	 */
+	private AtomicLong versionCounter;
+	private AtomicLongArray resultVersions;
+	private AtomicLongArray tallyVersions;
+
+	/**
+	 * Every change applied to the in-memory state is published here for
+	 * standbys to replicate.
+	 */
+	private ChangeFeed changeFeed;
+
+	public LogStructuredStore(String fileLocation, String dbName,
+			StorageConfiguration configuration) throws IOException {
+		this.configuration = configuration;
+		this.versionCounter = new AtomicLong(System.currentTimeMillis() << 16);
+		this.resultVersions = new AtomicLongArray(
+				EventCategories.values().length);
+		this.tallyVersions = new AtomicLongArray(
+				NationCategories.values().length);
+		for (int i = 0; i < this.resultVersions.length(); i++) {
+			this.resultVersions.set(i, this.versionCounter.incrementAndGet());
+		}
+		for (int i = 0; i < this.tallyVersions.length(); i++) {
+			this.tallyVersions.set(i, this.versionCounter.incrementAndGet());
+		}
+		this.changeFeed = new ChangeFeed();
+		this.snapshotFileName = fileLocation + SNAPSHOT_FILE_PREFIX + dbName;
+
+		this.scoreSegments = new EnumMap<EventCategories, ScoreSegment>(
+				EventCategories.class);
+		for (EventCategories event : EventCategories.values()) {
+			this.scoreSegments.put(event, new ScoreSegment(event, fileLocation
+					+ SCORE_FILE_PREFIX + dbName + "." + event.name(),
+					fileLocation + HISTORY_FILE_PREFIX + dbName + "."
+							+ event.name(), configuration,
+					this.versionCounter, this.changeFeed));
+		}
+		this.results = new EnumMap<EventCategories, Results>(
+				EventCategories.class);
+		this.medalTallies = new HashMap<NationCategories, Tally>();
+		this.tallySequences = new ProducerSequences();
+		this.resultsLock = new ReentrantReadWriteLock();
+		this.talliesLock = new ReentrantReadWriteLock();
+		for (NationCategories nation : NationCategories.values()) {
+			this.medalTallies.put(nation, new Tally());
+			this.medalTallies.get(nation).setTimestamp(
+					System.currentTimeMillis());
+		}
+
+		this.mainPartition = new LogPartition(MAIN_PARTITION_NAME, fileLocation
+				+ LOG_FILE_PREFIX + dbName, configuration,
+				new GroupCommitter.CommitListener() {
+
+					@Override
+					public void committed(LogRecord record) {
+						apply(record);
+					}
+				});
+		if (configuration.getStorageMode() == StorageMode.MAPPED) {
+			this.mappedTallyStore = new MappedTallyStore(fileLocation
+					+ TALLY_FILE_PREFIX + dbName);
+		}
+		recover();
+	}
+
+	/**
+	 * Restores the state of the database by loading the latest snapshot, if
+	 * any, and replaying the log segments of each partition written after it.
+	 *
+	 * @throws IOException
+	 *             If the snapshot was taken by another shard layout.
+	 */
+	private void recover() throws IOException {
+		long startTime = System.currentTimeMillis();
+		DatabaseSnapshot snapshot = readSnapshot();
+		if (snapshot == null) {
+			snapshot = new DatabaseSnapshot();
+			snapshot.setShard(this.configuration.getShardIndex(),
+					this.configuration.getShardCount());
+		}
+		if (snapshot.getShardIndex() != this.configuration.getShardIndex()
+				|| snapshot.getShardCount() != this.configuration
+						.getShardCount()) {
+			throw new IOException("Database " + this.snapshotFileName
+					+ " holds shard " + snapshot.getShardIndex() + "/"
+					+ snapshot.getShardCount() + ", not "
+					+ this.configuration.getShardIndex() + "/"
+					+ this.configuration.getShardCount() + ".");
+		}
+		for (Map.Entry<EventCategories, List<Athlete>> eventScores : snapshot
+				.getScores().entrySet()) {
+			this.scoreSegments.get(eventScores.getKey()).setScores(
+					eventScores.getValue());
+		}
+		for (Map.Entry<EventCategories, Map<String, Long>> eventSequences : snapshot
+				.getScoreSequences().entrySet()) {
+			this.scoreSegments.get(eventSequences.getKey()).setLastSequences(
+					eventSequences.getValue());
+		}
+		this.results.putAll(snapshot.getResults());
+		this.medalTallies.putAll(snapshot.getMedalTallies());
+		this.tallySequences = snapshot.getTallySequences();
+		this.tallyUpdates = snapshot.getTallyUpdates();
+
+		int replayedRecords = this.mainPartition.replay(snapshot
+				.getFirstSegment(this.mainPartition.getName()));
+		for (ScoreSegment segment : this.scoreSegments.values()) {
+			replayedRecords += segment.recover(snapshot
+					.getFirstSegment(segment.getPartition().getName()));
+		}
+		if (this.mappedTallyStore != null) {
+			// Asynchronously logged records may have reached the mapped store
+			// but not the log; later records must be numbered after them.
+			this.tallyUpdates = Math.max(this.tallyUpdates,
+					this.mappedTallyStore.getAppliedUpdates());
+		}
+		System.err.println("Recovered database with " + replayedRecords
+				+ " logged updates in "
+				+ (System.currentTimeMillis() - startTime) + " ms.");
+	}
+
+	/**
+	 * Writes a snapshot of the current state and truncates the log segments
+	 * it covers. Each partition is held back only while its own state is
+	 * copied; the snapshot is written to disk without blocking writers or
+	 * readers.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void checkpoint() throws IOException {
+		final DatabaseSnapshot snapshot = new DatabaseSnapshot();
+		snapshot.setShard(this.configuration.getShardIndex(),
+				this.configuration.getShardCount());
+		for (final ScoreSegment segment : this.scoreSegments.values()) {
+			LogPartition partition = segment.getPartition();
+			snapshot.setFirstSegment(partition.getName(),
+					partition.checkpoint(new Runnable() {
+
+						@Override
+						public void run() {
+							snapshot.getScores().put(segment.getEventName(),
+									segment.getScores());
+							snapshot.getScoreSequences().put(
+									segment.getEventName(),
+									segment.getLastSequences());
+						}
+					}));
+		}
+		snapshot.setFirstSegment(this.mainPartition.getName(),
+				this.mainPartition.checkpoint(new Runnable() {
+
+					@Override
+					public void run() {
+						resultsLock.readLock().lock();
+						try {
+							snapshot.getResults().putAll(results);
+						} finally {
+							resultsLock.readLock().unlock();
+						}
+						talliesLock.readLock().lock();
+						try {
+							snapshot.getMedalTallies().putAll(medalTallies);
+							snapshot.setTallySequences(tallySequences.copy());
+							snapshot.setTallyUpdates(tallyUpdates);
+						} finally {
+							talliesLock.readLock().unlock();
+						}
+					}
+				}));
+
+		// The tally records the snapshot covers are no longer replayed, so
+		// the mapped store must hold them before it is written.
+		if (this.mappedTallyStore != null) {
+			this.mappedTallyStore.force();
+		}
+		writeSnapshot(RecordCodec.encode(snapshot));
+		this.mainPartition.truncateBefore(snapshot
+				.getFirstSegment(this.mainPartition.getName()));
+		for (ScoreSegment segment : this.scoreSegments.values()) {
+			LogPartition partition = segment.getPartition();
+			partition.truncateBefore(snapshot.getFirstSegment(partition
+					.getName()));
+		}
+	}
+
+	private static Tally copyTally(Tally medalTally) {
+		Tally copy = new Tally();
+		for (MedalCategories medalType : MedalCategories.values()) {
+			copy.setCount(medalType, medalTally.getCount(medalType));
+		}
+		copy.setTimestamp(medalTally.getTimestamp());
+		return copy;
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file and atomically moves it in place
+	 * of the previous snapshot.
+	 *
+	 * @param encodedSnapshot
+	 * @throws IOException
+	 */
+	private void writeSnapshot(byte[] encodedSnapshot) throws IOException {
+		File tempFile = new File(this.snapshotFileName + TEMP_FILE_SUFFIX);
+		FileOutputStream fileOut = new FileOutputStream(tempFile);
+		try {
+			fileOut.write(encodedSnapshot);
+			fileOut.flush();
+			fileOut.getFD().sync();
+		} finally {
+			fileOut.close();
+		}
+		Files.move(tempFile.toPath(), new File(this.snapshotFileName).toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the latest snapshot.
+	 *
+	 * @return The latest snapshot, or null if no checkpoint has been taken.
+	 * @throws IOException
+	 */
+	private DatabaseSnapshot readSnapshot() throws IOException {
+		File snapshotFile = new File(this.snapshotFileName);
+		if (!snapshotFile.exists()) {
+			return null;
+		}
+		return RecordCodec.decodeSnapshot(Files.readAllBytes(snapshotFile
+				.toPath()));
+	}
+
+	public void updateCurrentScores(EventCategories eventName,
+			List<Athlete> currentScores) throws IOException {
+		updateCurrentScores(eventName, currentScores, null);
+	}
+
+	/**
+	 * Replaces the current scores of an event.
+	 *
+	 * @param eventName
+	 * @param currentScores
+	 * @param updateId
+	 *            The id of the update, or null.
+	 * @throws IOException
+	 */
+	@Override
+	public void updateCurrentScores(EventCategories eventName,
+			List<Athlete> currentScores, UpdateId updateId) throws IOException {
+		for (Athlete athleteScore : currentScores) {
+			athleteScore.setTimestamp(System.currentTimeMillis());
+		}
+		this.scoreSegments.get(eventName).update(currentScores, updateId,
+				this.configuration.getDurability(RecordType.SCORES));
+	}
+
+	public void updateResults(Event completedEvent) throws IOException {
+		updateResults(completedEvent, null);
+	}
+
+	/**
+	 * Adds a completed event to the results.
+	 *
+	 * @param completedEvent
+	 * @param updateId
+	 *            The id of the update, or null.
+	 * @throws IOException
+	 */
+	@Override
+	public void updateResults(Event completedEvent, UpdateId updateId)
+			throws IOException {
+		completedEvent.getResult().setTimestamp(System.currentTimeMillis());
+		if (this.mappedTallyStore != null) {
+			setMappedResults(completedEvent.getName(),
+					completedEvent.getResult());
+			forceMapped(RecordType.RESULTS);
+			return;
+		}
+		log(LogRecord.resultUpdate(completedEvent).withUpdateId(updateId));
+	}
+
+	public void updateMedalTallies(Results eventResult) throws IOException {
+		updateMedalTallies(eventResult, null);
+	}
+
+	/**
+	 * Credits the winners of an event in the medal tallies. A medal without a
+	 * team, such as one won by a nation stored on another shard, is skipped,
+	 * as is the whole update if its id shows it was credited before. The
+	 * update is logged in every storage mode, so it is acknowledged only once
+	 * its id is as durable as configured for tallies.
+	 *
+	 * @param eventResult
+	 * @param updateId
+	 *            The id of the update, or null if it is always credited.
+	 * @throws IOException
+	 */
+	@Override
+	public void updateMedalTallies(Results eventResult, UpdateId updateId)
+			throws IOException {
+		log(LogRecord.tallyUpdate(eventResult).withUpdateId(updateId));
+	}
+
+	/**
+	 * Credits a logged tally update in the mapped store, unless it reached
+	 * the store before a restart. Called under the tally write lock.
+	 *
+	 * @param eventResult
+	 * @param updateNumber
+	 * @param updateId
+	 */
+	private void applyMappedTallies(Results eventResult, long updateNumber,
+			UpdateId updateId) {
+		if (!this.mappedTallyStore.incrementTallies(eventResult, updateNumber)) {
+			return;
+		}
+		// The tallies are read back under the feed's lock, so the last
+		// change published for a nation always has its latest tally.
+		synchronized (this.changeFeed) {
+			for (MedalCategories medalType : MedalCategories.values()) {
+				NationCategories team = eventResult.getTeam(medalType);
+				if (team == null) {
+					continue;
+				}
+				this.tallyVersions.set(team.ordinal(),
+						this.versionCounter.incrementAndGet());
+				this.changeFeed.publish(Change.tally(team,
+						this.mappedTallyStore.getTally(team), updateId));
+			}
+		}
+	}
+
+	private void setMappedResults(EventCategories eventName,
+			Results eventResult) {
+		this.mappedTallyStore.setResults(eventName, eventResult);
+		this.resultVersions.set(eventName.ordinal(),
+				this.versionCounter.incrementAndGet());
+		this.changeFeed.publish(Change.results(eventName, eventResult));
+	}
+
+	/**
+	 * Forces an update of the mapped store to disk unless its type is written
+	 * asynchronously, in which case it reaches disk with the next checkpoint
+	 * or when the operating system writes back the page.
+	 *
+	 * @param type
+	 */
+	private void forceMapped(RecordType type) {
+		if (this.configuration.getDurability(type) != Durability.ASYNC) {
+			this.mappedTallyStore.force();
+		}
+	}
+
+	@Override
+	public Tally getMedalTally(NationCategories teamName) {
+		if (this.mappedTallyStore != null) {
+			return this.mappedTallyStore.getTally(teamName);
+		}
+		this.talliesLock.readLock().lock();
+		try {
+			return this.medalTallies.get(teamName);
+		} finally {
+			this.talliesLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the medal tallies of every nation under one acquisition of the
+	 * tally lock.
+	 *
+	 * @return Map<NationCategories, Tally>
+	 */
+	@Override
+	public Map<NationCategories, Tally> getAllTallies() {
+		if (this.mappedTallyStore != null) {
+			return this.mappedTallyStore.getAllTallies();
+		}
+		this.talliesLock.readLock().lock();
+		try {
+			return new EnumMap<NationCategories, Tally>(this.medalTallies);
+		} finally {
+			this.talliesLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the whole database in one pass. Results and tallies are read
+	 * holding both their read locks, so no update to either is seen half
+	 * applied; the scores of each event are its latest published list.
+	 *
+	 * @return GamesSnapshot
+	 */
+	@Override
+	public GamesSnapshot getGamesSnapshot() {
+		GamesSnapshot snapshot = new GamesSnapshot(System.currentTimeMillis());
+		for (ScoreSegment segment : this.scoreSegments.values()) {
+			snapshot.putScores(segment.getEventName(), segment.getScores());
+		}
+		Map<EventCategories, Results> snapshotResults = new EnumMap<EventCategories, Results>(
+				EventCategories.class);
+		Map<NationCategories, Tally> snapshotTallies = new EnumMap<NationCategories, Tally>(
+				NationCategories.class);
+		if (this.mappedTallyStore != null) {
+			this.mappedTallyStore.readAll(snapshotResults, snapshotTallies);
+		} else {
+			this.resultsLock.readLock().lock();
+			this.talliesLock.readLock().lock();
+			try {
+				snapshotResults.putAll(this.results);
+				snapshotTallies.putAll(this.medalTallies);
+			} finally {
+				this.talliesLock.readLock().unlock();
+				this.resultsLock.readLock().unlock();
+			}
+		}
+		for (Map.Entry<EventCategories, Results> entry : snapshotResults
+				.entrySet()) {
+			snapshot.putResults(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<NationCategories, Tally> entry : snapshotTallies
+				.entrySet()) {
+			snapshot.putMedalTally(entry.getKey(), entry.getValue());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Looks up the results of an event in the results index.
+	 *
+	 * @param eventName
+	 * @return The results, or null if the event has not completed.
+	 */
+	@Override
+	public Results getResults(EventCategories eventName) {
+		if (this.mappedTallyStore != null) {
+			return this.mappedTallyStore.getResults(eventName);
+		}
+		this.resultsLock.readLock().lock();
+		try {
+			return this.results.get(eventName);
+		} finally {
+			this.resultsLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Athlete> getCurrentScores(EventCategories eventName) {
+		return this.scoreSegments.get(eventName).getScores();
+	}
+
+	/**
+	 * Reads the history of an event's scores between two times, inclusive.
+	 *
+	 * @param eventName
+	 * @param fromTimestamp
+	 * @param toTimestamp
+	 * @return List<ScoreSample>
+	 * @throws IOException
+	 */
+	@Override
+	public List<ScoreSample> getScoreHistory(EventCategories eventName,
+			long fromTimestamp, long toTimestamp) throws IOException {
+		return this.scoreSegments.get(eventName).getHistory(fromTimestamp,
+				toTimestamp);
+	}
+
+	/**
+	 * Conditional reads: each returns the record with its version, or only
+	 * the version if it equals the one the caller already holds.
+	 *
+	 * The version is read before the record, and updates set the record
+	 * before its version, so a record returned is never older than its
+	 * version.
+	 */
+	@Override
+	public Versioned<Tally> getMedalTallyIfNewer(NationCategories teamName,
+			long version) {
+		long currentVersion = this.tallyVersions.get(teamName.ordinal());
+		if (currentVersion == version) {
+			return Versioned.notModified(currentVersion);
+		}
+		return Versioned.of(currentVersion, getMedalTally(teamName));
+	}
+
+	@Override
+	public Versioned<Results> getResultsIfNewer(EventCategories eventName,
+			long version) {
+		long currentVersion = this.resultVersions.get(eventName.ordinal());
+		if (currentVersion == version) {
+			return Versioned.notModified(currentVersion);
+		}
+		return Versioned.of(currentVersion, getResults(eventName));
+	}
+
+	@Override
+	public Versioned<List<Athlete>> getCurrentScoresIfNewer(
+			EventCategories eventName, long version) {
+		Versioned<List<Athlete>> scores = this.scoreSegments.get(
+				eventName).getVersionedScores();
+		if (scores.getVersion() == version) {
+			return Versioned.notModified(version);
+		}
+		return scores;
+	}
+
+	/**
+	 * Writes a result or tally record to the main partition with the
+	 * durability configured for its type.
+	 *
+	 * @param record
+	 * @throws IOException
+	 */
+	private void log(LogRecord record) throws IOException {
+		this.mainPartition.log(record,
+				this.configuration.getDurability(record.getType()));
+	}
+
+	/**
+	 * @return A summary of the commit counters of every partition.
+	 */
+	@Override
+	public String getStatistics() {
+		StringBuilder statistics = new StringBuilder(
+				this.mainPartition.getStatistics());
+		for (ScoreSegment segment : this.scoreSegments.values()) {
+			statistics.append("\n").append(
+					segment.getPartition().getStatistics());
+		}
+		return statistics.toString();
+	}
+
+	/**
+	 * Applies a logged update to the in-memory state, or for tallies in MAPPED
+	 * mode to the mapped store. A tally update is logged before it is checked
+	 * against the updates already credited, so replaying the log skips the
+	 * same duplicates as were skipped when it was written.
+	 *
+	 * @param record
+	 */
+	private void apply(LogRecord record) {
+		switch (record.getType()) {
+		case SCORES:
+			this.scoreSegments.get(record.getEventName()).setScores(
+					record.getScores());
+			break;
+		case RESULTS:
+			putResults(record.getEventName(), record.getEventResult());
+			break;
+		case TALLIES:
+			this.talliesLock.writeLock().lock();
+			try {
+				long updateNumber = ++this.tallyUpdates;
+				UpdateId updateId = record.getUpdateId();
+				if (updateId != null && !this.tallySequences.claim(updateId)) {
+					break;
+				}
+				Results eventResult = record.getEventResult();
+				if (this.mappedTallyStore != null) {
+					applyMappedTallies(eventResult, updateNumber, updateId);
+					break;
+				}
+				// A reader may still be serializing the published tally, so
+				// the increment is made on a copy which then replaces it.
+				for (MedalCategories medalType : MedalCategories.values()) {
+					NationCategories team = eventResult.getTeam(medalType);
+					if (team == null) {
+						continue;
+					}
+					Tally medalTally = copyTally(this.medalTallies.get(team));
+					medalTally.incrementTally(medalType);
+					medalTally.setTimestamp(System.currentTimeMillis());
+					putTally(team, medalTally, updateId);
+				}
+			} finally {
+				this.talliesLock.writeLock().unlock();
+			}
+			break;
+		}
+	}
+
+	private void putResults(EventCategories eventName, Results eventResult) {
+		this.resultsLock.writeLock().lock();
+		try {
+			this.results.put(eventName, eventResult);
+			this.resultVersions.set(eventName.ordinal(),
+					this.versionCounter.incrementAndGet());
+			this.changeFeed.publish(Change.results(eventName, eventResult));
+		} finally {
+			this.resultsLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the tally of a nation. Called under the tally write lock.
+	 *
+	 * @param nation
+	 * @param medalTally
+	 * @param updateId
+	 */
+	private void putTally(NationCategories nation, Tally medalTally,
+			UpdateId updateId) {
+		this.medalTallies.put(nation, medalTally);
+		this.tallyVersions.set(nation.ordinal(),
+				this.versionCounter.incrementAndGet());
+		this.changeFeed.publish(Change.tally(nation, medalTally, updateId));
+	}
+
+	/**
+	 * Returns the changes applied from offset onwards, for a standby to
+	 * replicate. A standby asking for an offset the feed no longer holds, or
+	 * one issued by an earlier run of this store, is sent the whole state
+	 * instead. Changes applied while the state is read are sent again from
+	 * the feed afterwards, which is harmless as each carries the state it
+	 * produced. The whole state includes the tally updates already credited,
+	 * so a standby promoted later still recognises them.
+	 *
+	 * @param offset
+	 * @param maxChanges
+	 * @return ChangeBatch
+	 */
+	@Override
+	public ChangeBatch getChangesSince(long offset, int maxChanges) {
+		List<Change> changes = this.changeFeed.getChangesSince(offset,
+				maxChanges);
+		if (changes != null) {
+			return new ChangeBatch(changes, offset + changes.size(), false);
+		}
+		long nextOffset = this.changeFeed.getNextOffset();
+		List<Change> state = new ArrayList<Change>();
+		for (ScoreSegment segment : this.scoreSegments.values()) {
+			state.add(Change.scores(segment.getEventName(),
+					segment.getScores()));
+		}
+		for (EventCategories eventName : EventCategories.values()) {
+			Results eventResult = getResults(eventName);
+			if (eventResult != null) {
+				state.add(Change.results(eventName, eventResult));
+			}
+		}
+		for (NationCategories nation : NationCategories.values()) {
+			state.add(Change.tally(nation, getMedalTally(nation)));
+		}
+		ChangeBatch batch = new ChangeBatch(state, nextOffset, true);
+		batch.setTallySequences(this.tallySequences.copy());
+		return batch;
+	}
+
+	/**
+	 * Replaces the record of the tally updates already credited with the one
+	 * sent by the primary in a resync.
+	 *
+	 * @param tallySequences
+	 */
+	@Override
+	public void setTallySequences(ProducerSequences tallySequences) {
+		this.talliesLock.writeLock().lock();
+		try {
+			this.tallySequences = tallySequences;
+		} finally {
+			this.talliesLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Applies a change replicated from the primary to the in-memory state. It
+	 * is not logged; a standby's state reaches disk with its checkpoints. The
+	 * id a tally change carries is recorded as credited, as the tally it
+	 * carries already includes it, under the same lock as the tally, so a
+	 * checkpoint never holds one without the other.
+	 *
+	 * @param change
+	 */
+	@Override
+	public void applyChange(Change change) {
+		switch (change.getType()) {
+		case SCORES:
+			this.scoreSegments.get(change.getEventName()).setScores(
+					change.getScores());
+			break;
+		case RESULTS:
+			if (this.mappedTallyStore != null) {
+				setMappedResults(change.getEventName(),
+						change.getEventResult());
+			} else {
+				putResults(change.getEventName(), change.getEventResult());
+			}
+			break;
+		case TALLIES:
+			this.talliesLock.writeLock().lock();
+			try {
+				if (change.getUpdateId() != null) {
+					this.tallySequences.claim(change.getUpdateId());
+				}
+				if (this.mappedTallyStore != null) {
+					synchronized (this.changeFeed) {
+						this.mappedTallyStore.setTally(change.getNation(),
+								change.getMedalTally());
+						this.tallyVersions.set(change.getNation().ordinal(),
+								this.versionCounter.incrementAndGet());
+						this.changeFeed.publish(Change.tally(
+								change.getNation(), change.getMedalTally(),
+								change.getUpdateId()));
+					}
+				} else {
+					putTally(change.getNation(), change.getMedalTally(),
+							change.getUpdateId());
+				}
+			} finally {
+				this.talliesLock.writeLock().unlock();
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Closes the underlying logs.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		this.mainPartition.close();
+		for (ScoreSegment segment : this.scoreSegments.values()) {
+			segment.close();
+		}
+		if (this.mappedTallyStore != null) {
+			this.mappedTallyStore.close();
+		}
+	}
+}
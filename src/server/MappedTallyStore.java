@@ -0,0 +1,329 @@
+package server;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import base.EventCategories;
+import base.MedalCategories;
+import base.NationCategories;
+import base.Results;
+import base.Tally;
+
+/**
+ * Keeps the medal tallies and event results in a memory-mapped file with a
+ * fixed binary layout. Every nation and event has a fixed slot indexed by its
+ * enum ordinal, so reads are a few loads from mapped memory and tally updates
+ * are in-place increments.
+ *
+ * The file starts with a header (magic, format version and the number of
+ * nations, medals and events the layout was built for), followed by one tally
+ * slot per nation (last update time, then one count per medal) and one result
+ * slot per event (last update time, a completed flag, then the ordinal of the
+ * winning nation for each medal, or -1 if the medal has no winner). The file
+ * ends with the number of logged tally updates applied to it, which was added
+ * after the first layout and reads as zero in a file written before it.
+ *
+ * The tally and result regions have separate read/write locks, so reads of
+ * either run concurrently and are only held back by writes to the same region.
+ *
+ * @author aravind
+ *
+ */
+public class MappedTallyStore {
+	private static int MAGIC = 0x54414c59;
+	private static int FORMAT_VERSION = 1;
+	private static int HEADER_SIZE = 5 * 4;
+	private static byte NO_TEAM = -1;
+
+	private static int NATIONS = NationCategories.values().length;
+	private static int MEDALS = MedalCategories.values().length;
+	private static int EVENTS = EventCategories.values().length;
+
+	private static int TALLY_SLOT_SIZE = 8 + MEDALS * 4;
+	private static int RESULT_SLOT_SIZE = 8 + 1 + MEDALS;
+	private static int TALLY_REGION_OFFSET = HEADER_SIZE;
+	private static int RESULT_REGION_OFFSET = TALLY_REGION_OFFSET + NATIONS
+			* TALLY_SLOT_SIZE;
+	private static int APPLIED_UPDATES_OFFSET = RESULT_REGION_OFFSET + EVENTS
+			* RESULT_SLOT_SIZE;
+	private static int FILE_SIZE = APPLIED_UPDATES_OFFSET + 8;
+
+	private RandomAccessFile file;
+	private MappedByteBuffer buffer;
+	private ReadWriteLock tallyLock;
+	private ReadWriteLock resultLock;
+
+	public MappedTallyStore(String fileName) throws IOException {
+		this.tallyLock = new ReentrantReadWriteLock();
+		this.resultLock = new ReentrantReadWriteLock();
+		this.file = new RandomAccessFile(fileName, "rw");
+		boolean isNew = (this.file.length() == 0);
+		this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+				0, FILE_SIZE);
+		if (isNew) {
+			writeHeader();
+		} else {
+			checkHeader(fileName);
+		}
+	}
+
+	private void writeHeader() {
+		this.buffer.putInt(0, MAGIC);
+		this.buffer.putInt(4, FORMAT_VERSION);
+		this.buffer.putInt(8, NATIONS);
+		this.buffer.putInt(12, MEDALS);
+		this.buffer.putInt(16, EVENTS);
+		long now = System.currentTimeMillis();
+		for (NationCategories nation : NationCategories.values()) {
+			this.buffer.putLong(tallySlot(nation), now);
+		}
+		this.buffer.force();
+	}
+
+	private void checkHeader(String fileName) throws IOException {
+		if (this.buffer.getInt(0) != MAGIC
+				|| this.buffer.getInt(4) != FORMAT_VERSION
+				|| this.buffer.getInt(8) != NATIONS
+				|| this.buffer.getInt(12) != MEDALS
+				|| this.buffer.getInt(16) != EVENTS) {
+			throw new IOException(fileName
+					+ " does not match the current tally layout.");
+		}
+	}
+
+	private static int tallySlot(NationCategories nation) {
+		return TALLY_REGION_OFFSET + nation.ordinal() * TALLY_SLOT_SIZE;
+	}
+
+	private static int resultSlot(EventCategories eventName) {
+		return RESULT_REGION_OFFSET + eventName.ordinal() * RESULT_SLOT_SIZE;
+	}
+
+	/**
+	 * Reads the medal tally of a nation from its slot.
+	 *
+	 * @param nation
+	 * @return Tally
+	 */
+	public Tally getTally(NationCategories nation) {
+		this.tallyLock.readLock().lock();
+		try {
+			return readTally(nation);
+		} finally {
+			this.tallyLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the medal tallies of every nation under one acquisition of the
+	 * tally lock.
+	 *
+	 * @return Map<NationCategories, Tally>
+	 */
+	public Map<NationCategories, Tally> getAllTallies() {
+		Map<NationCategories, Tally> medalTallies = new EnumMap<NationCategories, Tally>(
+				NationCategories.class);
+		this.tallyLock.readLock().lock();
+		try {
+			for (NationCategories nation : NationCategories.values()) {
+				medalTallies.put(nation, readTally(nation));
+			}
+		} finally {
+			this.tallyLock.readLock().unlock();
+		}
+		return medalTallies;
+	}
+
+	/**
+	 * Reads every result and medal tally holding both read locks, so no
+	 * update to either region falls between the reads.
+	 *
+	 * @param results
+	 *            Filled with the results of the completed events.
+	 * @param medalTallies
+	 *            Filled with the tallies of every nation.
+	 */
+	public void readAll(Map<EventCategories, Results> results,
+			Map<NationCategories, Tally> medalTallies) {
+		this.tallyLock.readLock().lock();
+		this.resultLock.readLock().lock();
+		try {
+			for (NationCategories nation : NationCategories.values()) {
+				medalTallies.put(nation, readTally(nation));
+			}
+			for (EventCategories eventName : EventCategories.values()) {
+				Results eventResult = readResults(eventName);
+				if (eventResult != null) {
+					results.put(eventName, eventResult);
+				}
+			}
+		} finally {
+			this.resultLock.readLock().unlock();
+			this.tallyLock.readLock().unlock();
+		}
+	}
+
+	private Tally readTally(NationCategories nation) {
+		int slot = tallySlot(nation);
+		Tally medalTally = new Tally();
+		medalTally.setTimestamp(this.buffer.getLong(slot));
+		for (MedalCategories medalType : MedalCategories.values()) {
+			medalTally.setCount(medalType,
+					this.buffer.getInt(slot + 8 + medalType.ordinal() * 4));
+		}
+		return medalTally;
+	}
+
+	/**
+	 * @return The number of the last logged tally update applied.
+	 */
+	public long getAppliedUpdates() {
+		this.tallyLock.readLock().lock();
+		try {
+			return this.buffer.getLong(APPLIED_UPDATES_OFFSET);
+		} finally {
+			this.tallyLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Credits the winners of an event by incrementing their counts in place,
+	 * unless the update has been applied already. Logged tally updates are
+	 * numbered in log order, and the number of the last one applied is
+	 * written along with the counts, in the same page, so an update replayed
+	 * from the log after a restart is applied only if its increments did not
+	 * reach the file. Medals without a team are skipped.
+	 *
+	 * @param eventResult
+	 * @param updateNumber
+	 *            The number of the update in the log.
+	 * @return true if the update was applied, false if it had been already.
+	 */
+	public boolean incrementTallies(Results eventResult, long updateNumber) {
+		long now = System.currentTimeMillis();
+		this.tallyLock.writeLock().lock();
+		try {
+			if (updateNumber <= this.buffer.getLong(APPLIED_UPDATES_OFFSET)) {
+				return false;
+			}
+			this.buffer.putLong(APPLIED_UPDATES_OFFSET, updateNumber);
+			for (MedalCategories medalType : MedalCategories.values()) {
+				NationCategories team = eventResult.getTeam(medalType);
+				if (team == null) {
+					continue;
+				}
+				int slot = tallySlot(team);
+				int countOffset = slot + 8 + medalType.ordinal() * 4;
+				this.buffer.putInt(countOffset,
+						this.buffer.getInt(countOffset) + 1);
+				this.buffer.putLong(slot, now);
+			}
+			return true;
+		} finally {
+			this.tallyLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Overwrites the medal tally of a nation, as replicated from a primary.
+	 *
+	 * @param nation
+	 * @param medalTally
+	 */
+	public void setTally(NationCategories nation, Tally medalTally) {
+		int slot = tallySlot(nation);
+		this.tallyLock.writeLock().lock();
+		try {
+			for (MedalCategories medalType : MedalCategories.values()) {
+				this.buffer.putInt(slot + 8 + medalType.ordinal() * 4,
+						medalTally.getCount(medalType));
+			}
+			this.buffer.putLong(slot, medalTally.getTimestamp());
+		} finally {
+			this.tallyLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the results of an event from its slot.
+	 *
+	 * @param eventName
+	 * @return The results, or null if the event has not completed.
+	 */
+	public Results getResults(EventCategories eventName) {
+		this.resultLock.readLock().lock();
+		try {
+			return readResults(eventName);
+		} finally {
+			this.resultLock.readLock().unlock();
+		}
+	}
+
+	private Results readResults(EventCategories eventName) {
+		int slot = resultSlot(eventName);
+		if (this.buffer.get(slot + 8) == 0) {
+			return null;
+		}
+		ArrayList<NationCategories> winners = new ArrayList<NationCategories>();
+		for (MedalCategories medalType : MedalCategories.values()) {
+			byte team = this.buffer.get(slot + 9 + medalType.ordinal());
+			winners.add((team == NO_TEAM) ? null
+					: NationCategories.values()[team]);
+		}
+		Results result = new Results(winners);
+		result.setTimestamp(this.buffer.getLong(slot));
+		return result;
+	}
+
+	/**
+	 * Writes the results of a completed event into its slot. Medals without a
+	 * team are written as such.
+	 *
+	 * @param eventName
+	 * @param eventResult
+	 */
+	public void setResults(EventCategories eventName, Results eventResult) {
+		int slot = resultSlot(eventName);
+		this.resultLock.writeLock().lock();
+		try {
+			for (MedalCategories medalType : MedalCategories.values()) {
+				NationCategories team = eventResult.getTeam(medalType);
+				this.buffer.put(slot + 9 + medalType.ordinal(),
+						(team == null) ? NO_TEAM : (byte) team.ordinal());
+			}
+			Long timestamp = eventResult.getTimestamp();
+			this.buffer.putLong(slot, (timestamp == null) ? System
+					.currentTimeMillis() : timestamp);
+			this.buffer.put(slot + 8, (byte) 1);
+		} finally {
+			this.resultLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forces the mapped pages to disk. Writes made concurrently may or may not
+	 * be included.
+	 */
+	public void force() {
+		this.buffer.force();
+	}
+
+	public void close() throws IOException {
+		this.tallyLock.writeLock().lock();
+		this.resultLock.writeLock().lock();
+		try {
+			this.buffer.force();
+			this.file.close();
+		} finally {
+			this.resultLock.writeLock().unlock();
+			this.tallyLock.writeLock().unlock();
+		}
+	}
+}
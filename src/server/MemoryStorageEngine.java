@@ -0,0 +1,529 @@
+package server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import server.LogRecord.RecordType;
+import base.Athlete;
+import base.AthleteScores;
+import base.Event;
+import base.EventCategories;
+import base.GamesSnapshot;
+import base.MedalCategories;
+import base.NationCategories;
+import base.Results;
+import base.ScoreSample;
+import base.Tally;
+import base.UpdateId;
+import base.Versioned;
+
+/**
+ * A {@link StorageEngine} holding the whole database in memory and nothing on
+ * disk, for benchmarks and as the reference the other engines are checked
+ * against. The state is guarded by a single read/write lock. Subclasses make
+ * it durable by overriding the hooks called after each dataset changes, see
+ * {@link FileStorageEngine}.
+ *
+ * @author aravind
+ *
+ */
+public class MemoryStorageEngine implements StorageEngine {
+	private Map<EventCategories, List<Athlete>> scores;
+	private Map<EventCategories, Results> results;
+	private Map<NationCategories, Tally> medalTallies;
+	private Map<EventCategories, List<ScoreSample>> histories;
+
+	/**
+	 * The tally updates already credited, and the sequence number of the last
+	 * scores applied from each producer, by event.
+	 */
+	private ProducerSequences tallySequences;
+	private Map<EventCategories, Map<String, Long>> lastScoreSequences;
+
+	/**
+	 * Versions are seeded from the clock, as in {@link LogStructuredStore}.
+	 */
+	private AtomicLong versionCounter;
+	private Map<EventCategories, Long> scoreVersions;
+	private Map<EventCategories, Long> resultVersions;
+	private Map<NationCategories, Long> tallyVersions;
+
+	private ChangeFeed changeFeed;
+	private ReadWriteLock lock;
+	private AtomicLong updates;
+
+	public MemoryStorageEngine() {
+		this.scores = new EnumMap<EventCategories, List<Athlete>>(
+				EventCategories.class);
+		this.results = new EnumMap<EventCategories, Results>(
+				EventCategories.class);
+		this.medalTallies = new EnumMap<NationCategories, Tally>(
+				NationCategories.class);
+		this.histories = new EnumMap<EventCategories, List<ScoreSample>>(
+				EventCategories.class);
+		this.tallySequences = new ProducerSequences();
+		this.lastScoreSequences = new EnumMap<EventCategories, Map<String, Long>>(
+				EventCategories.class);
+		this.versionCounter = new AtomicLong(System.currentTimeMillis() << 16);
+		this.scoreVersions = new EnumMap<EventCategories, Long>(
+				EventCategories.class);
+		this.resultVersions = new EnumMap<EventCategories, Long>(
+				EventCategories.class);
+		this.tallyVersions = new EnumMap<NationCategories, Long>(
+				NationCategories.class);
+		this.changeFeed = new ChangeFeed();
+		this.lock = new ReentrantReadWriteLock();
+		this.updates = new AtomicLong();
+
+		for (EventCategories eventName : EventCategories.values()) {
+			this.scores.put(eventName,
+					AthleteScores.of(new ArrayList<Athlete>()));
+			this.histories.put(eventName, new ArrayList<ScoreSample>());
+			this.lastScoreSequences.put(eventName, new HashMap<String, Long>());
+			this.scoreVersions.put(eventName, nextVersion());
+			this.resultVersions.put(eventName, nextVersion());
+		}
+		for (NationCategories nation : NationCategories.values()) {
+			Tally medalTally = new Tally();
+			medalTally.setTimestamp(System.currentTimeMillis());
+			this.medalTallies.put(nation, medalTally);
+			this.tallyVersions.put(nation, nextVersion());
+		}
+	}
+
+	private long nextVersion() {
+		return this.versionCounter.incrementAndGet();
+	}
+
+	/**
+	 * Replaces the state with one read back by a subclass when it is opened.
+	 * Datasets passed as null are left empty.
+	 *
+	 * @param restoredScores
+	 * @param restoredResults
+	 * @param restoredTallies
+	 * @param restoredSequences
+	 * @param restoredScoreSequences
+	 */
+	protected void restore(
+			Map<EventCategories, List<Athlete>> restoredScores,
+			Map<EventCategories, Results> restoredResults,
+			Map<NationCategories, Tally> restoredTallies,
+			ProducerSequences restoredSequences,
+			Map<EventCategories, Map<String, Long>> restoredScoreSequences) {
+		this.lock.writeLock().lock();
+		try {
+			if (restoredScores != null) {
+				for (Map.Entry<EventCategories, List<Athlete>> entry : restoredScores
+						.entrySet()) {
+					this.scores.put(entry.getKey(),
+							AthleteScores.of(entry.getValue()));
+				}
+			}
+			if (restoredResults != null) {
+				this.results.putAll(restoredResults);
+			}
+			if (restoredTallies != null) {
+				this.medalTallies.putAll(restoredTallies);
+			}
+			if (restoredSequences != null) {
+				this.tallySequences = restoredSequences;
+			}
+			if (restoredScoreSequences != null) {
+				for (Map.Entry<EventCategories, Map<String, Long>> entry : restoredScoreSequences
+						.entrySet()) {
+					this.lastScoreSequences.put(entry.getKey(),
+							new HashMap<String, Long>(entry.getValue()));
+				}
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Hooks called holding the write lock after a dataset has changed, with
+	 * the whole dataset. The scores come with the last applied from each
+	 * producer, and the tallies with the updates already credited, so both
+	 * keep dropping retries after a restart. They do nothing in memory.
+	 *
+	 * @throws IOException
+	 */
+	protected void scoresChanged(Map<EventCategories, List<Athlete>> scores,
+			Map<EventCategories, Map<String, Long>> lastScoreSequences)
+			throws IOException {
+	}
+
+	protected void resultsChanged(Map<EventCategories, Results> results)
+			throws IOException {
+	}
+
+	protected void talliesChanged(Map<NationCategories, Tally> medalTallies,
+			ProducerSequences tallySequences) throws IOException {
+	}
+
+	/**
+	 * Hook called by an update once the write lock is released, to wait until
+	 * the datasets it changed are as durable as configured for its type. It
+	 * does nothing in memory.
+	 *
+	 * @param type
+	 * @throws IOException
+	 */
+	protected void awaitChanged(RecordType type) throws IOException {
+	}
+
+	/**
+	 * Records the scores of an event in its history. Kept in memory here.
+	 *
+	 * @param eventName
+	 * @param timestamp
+	 * @param currentScores
+	 * @throws IOException
+	 */
+	protected void appendHistory(EventCategories eventName, long timestamp,
+			List<Athlete> currentScores) throws IOException {
+		this.histories.get(eventName).add(
+				new ScoreSample(timestamp, new ArrayList<Athlete>(
+						currentScores)));
+	}
+
+	protected List<ScoreSample> readHistory(EventCategories eventName,
+			long fromTimestamp, long toTimestamp) throws IOException {
+		List<ScoreSample> range = new ArrayList<ScoreSample>();
+		for (ScoreSample sample : this.histories.get(eventName)) {
+			if (sample.getTimestamp() >= fromTimestamp
+					&& sample.getTimestamp() <= toTimestamp) {
+				range.add(sample);
+			}
+		}
+		return range;
+	}
+
+	@Override
+	public void updateCurrentScores(EventCategories eventName,
+			List<Athlete> currentScores, UpdateId updateId) throws IOException {
+		long timestamp = System.currentTimeMillis();
+		for (Athlete athleteScore : currentScores) {
+			athleteScore.setTimestamp(timestamp);
+		}
+		List<Athlete> newScores = AthleteScores.of(currentScores);
+		this.lock.writeLock().lock();
+		try {
+			if (updateId != null) {
+				Map<String, Long> lastSequences = this.lastScoreSequences
+						.get(eventName);
+				Long lastSequence = lastSequences.get(updateId
+						.getProducerId());
+				if (lastSequence != null
+						&& updateId.getSequence() <= lastSequence) {
+					return;
+				}
+				lastSequences.put(updateId.getProducerId(),
+						updateId.getSequence());
+			}
+			putScores(eventName, newScores);
+			appendHistory(eventName, timestamp, newScores);
+			scoresChanged(this.scores, this.lastScoreSequences);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		awaitChanged(RecordType.SCORES);
+	}
+
+	@Override
+	public void updateResults(Event completedEvent, UpdateId updateId)
+			throws IOException {
+		completedEvent.getResult().setTimestamp(System.currentTimeMillis());
+		this.lock.writeLock().lock();
+		try {
+			putResults(completedEvent.getName(), completedEvent.getResult());
+			resultsChanged(this.results);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		awaitChanged(RecordType.RESULTS);
+	}
+
+	@Override
+	public void updateMedalTallies(Results eventResult, UpdateId updateId)
+			throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			if (updateId != null && !this.tallySequences.claim(updateId)) {
+				return;
+			}
+			for (MedalCategories medalType : MedalCategories.values()) {
+				NationCategories team = eventResult.getTeam(medalType);
+				if (team == null) {
+					continue;
+				}
+				Tally medalTally = copyTally(this.medalTallies.get(team));
+				medalTally.incrementTally(medalType);
+				medalTally.setTimestamp(System.currentTimeMillis());
+				putTally(team, medalTally, updateId);
+			}
+			talliesChanged(this.medalTallies, this.tallySequences);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		awaitChanged(RecordType.TALLIES);
+	}
+
+	private static Tally copyTally(Tally medalTally) {
+		Tally copy = new Tally();
+		for (MedalCategories medalType : MedalCategories.values()) {
+			copy.setCount(medalType, medalTally.getCount(medalType));
+		}
+		copy.setTimestamp(medalTally.getTimestamp());
+		return copy;
+	}
+
+	/**
+	 * Setters called holding the write lock, which give the record a new
+	 * version and publish the change.
+	 */
+	private void putScores(EventCategories eventName, List<Athlete> newScores) {
+		newScores = AthleteScores.of(newScores);
+		this.scores.put(eventName, newScores);
+		this.scoreVersions.put(eventName, nextVersion());
+		this.changeFeed.publish(Change.scores(eventName, newScores));
+		this.updates.incrementAndGet();
+	}
+
+	private void putResults(EventCategories eventName, Results eventResult) {
+		this.results.put(eventName, eventResult);
+		this.resultVersions.put(eventName, nextVersion());
+		this.changeFeed.publish(Change.results(eventName, eventResult));
+		this.updates.incrementAndGet();
+	}
+
+	private void putTally(NationCategories nation, Tally medalTally,
+			UpdateId updateId) {
+		this.medalTallies.put(nation, medalTally);
+		this.tallyVersions.put(nation, nextVersion());
+		this.changeFeed.publish(Change.tally(nation, medalTally, updateId));
+		this.updates.incrementAndGet();
+	}
+
+	@Override
+	public Tally getMedalTally(NationCategories teamName) {
+		this.lock.readLock().lock();
+		try {
+			return this.medalTallies.get(teamName);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Map<NationCategories, Tally> getAllTallies() {
+		this.lock.readLock().lock();
+		try {
+			return new EnumMap<NationCategories, Tally>(this.medalTallies);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public GamesSnapshot getGamesSnapshot() {
+		GamesSnapshot snapshot = new GamesSnapshot(System.currentTimeMillis());
+		this.lock.readLock().lock();
+		try {
+			for (Map.Entry<EventCategories, List<Athlete>> entry : this.scores
+					.entrySet()) {
+				snapshot.putScores(entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<EventCategories, Results> entry : this.results
+					.entrySet()) {
+				snapshot.putResults(entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<NationCategories, Tally> entry : this.medalTallies
+					.entrySet()) {
+				snapshot.putMedalTally(entry.getKey(), entry.getValue());
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		return snapshot;
+	}
+
+	@Override
+	public Results getResults(EventCategories eventName) {
+		this.lock.readLock().lock();
+		try {
+			return this.results.get(eventName);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Athlete> getCurrentScores(EventCategories eventName) {
+		this.lock.readLock().lock();
+		try {
+			return this.scores.get(eventName);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<ScoreSample> getScoreHistory(EventCategories eventName,
+			long fromTimestamp, long toTimestamp) throws IOException {
+		this.lock.readLock().lock();
+		try {
+			return readHistory(eventName, fromTimestamp, toTimestamp);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Versioned<Tally> getMedalTallyIfNewer(NationCategories teamName,
+			long version) {
+		this.lock.readLock().lock();
+		try {
+			long currentVersion = this.tallyVersions.get(teamName);
+			if (currentVersion == version) {
+				return Versioned.notModified(currentVersion);
+			}
+			return Versioned.of(currentVersion,
+					this.medalTallies.get(teamName));
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Versioned<Results> getResultsIfNewer(EventCategories eventName,
+			long version) {
+		this.lock.readLock().lock();
+		try {
+			long currentVersion = this.resultVersions.get(eventName);
+			if (currentVersion == version) {
+				return Versioned.notModified(currentVersion);
+			}
+			return Versioned.of(currentVersion, this.results.get(eventName));
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Versioned<List<Athlete>> getCurrentScoresIfNewer(
+			EventCategories eventName, long version) {
+		this.lock.readLock().lock();
+		try {
+			long currentVersion = this.scoreVersions.get(eventName);
+			if (currentVersion == version) {
+				return Versioned.notModified(currentVersion);
+			}
+			return Versioned.<List<Athlete>> of(currentVersion,
+					this.scores.get(eventName));
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the changes applied from offset onwards, or the whole state as
+	 * in {@link LogStructuredStore#getChangesSince(long, int)}.
+	 */
+	@Override
+	public ChangeBatch getChangesSince(long offset, int maxChanges) {
+		List<Change> changes = this.changeFeed.getChangesSince(offset,
+				maxChanges);
+		if (changes != null) {
+			return new ChangeBatch(changes, offset + changes.size(), false);
+		}
+		this.lock.readLock().lock();
+		try {
+			long nextOffset = this.changeFeed.getNextOffset();
+			List<Change> state = new ArrayList<Change>();
+			for (Map.Entry<EventCategories, List<Athlete>> entry : this.scores
+					.entrySet()) {
+				state.add(Change.scores(entry.getKey(), entry.getValue()));
+			}
+			for (Map.Entry<EventCategories, Results> entry : this.results
+					.entrySet()) {
+				state.add(Change.results(entry.getKey(), entry.getValue()));
+			}
+			for (Map.Entry<NationCategories, Tally> entry : this.medalTallies
+					.entrySet()) {
+				state.add(Change.tally(entry.getKey(), entry.getValue()));
+			}
+			ChangeBatch batch = new ChangeBatch(state, nextOffset, true);
+			batch.setTallySequences(this.tallySequences.copy());
+			return batch;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void applyChange(Change change) throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			switch (change.getType()) {
+			case SCORES:
+				putScores(change.getEventName(), change.getScores());
+				scoresChanged(this.scores, this.lastScoreSequences);
+				break;
+			case RESULTS:
+				putResults(change.getEventName(), change.getEventResult());
+				resultsChanged(this.results);
+				break;
+			case TALLIES:
+				if (change.getUpdateId() != null) {
+					this.tallySequences.claim(change.getUpdateId());
+				}
+				putTally(change.getNation(), change.getMedalTally(),
+						change.getUpdateId());
+				talliesChanged(this.medalTallies, this.tallySequences);
+				break;
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		awaitChanged(change.getType());
+	}
+
+	@Override
+	public void setTallySequences(ProducerSequences tallySequences)
+			throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			this.tallySequences = tallySequences;
+			talliesChanged(this.medalTallies, this.tallySequences);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		awaitChanged(RecordType.TALLIES);
+	}
+
+	/**
+	 * Every update is already as durable as the engine makes it.
+	 */
+	@Override
+	public void checkpoint() throws IOException {
+	}
+
+	@Override
+	public String getStatistics() {
+		return getClass().getSimpleName() + ": " + this.updates.get()
+				+ " updates applied.";
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+}
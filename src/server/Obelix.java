@@ -5,15 +5,19 @@ import java.net.SocketException;
 import java.rmi.ConnectException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
+import java.rmi.ServerException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import util.BullyElectedBerkeleySynchronized;
 import util.LamportClock;
@@ -23,13 +27,18 @@ import util.RegistryService;
 import util.ServerDetail;
 import util.ServiceComponent;
 import base.Athlete;
+import base.AthleteScores;
 import base.Event;
 import base.EventCategories;
+import base.GamesSnapshot;
 import base.MedalCategories;
 import base.NationCategories;
 import base.OlympicException;
 import base.Results;
+import base.Standings;
 import base.Tally;
+import base.UpdateId;
+import base.Versioned;
 import client.TabletInterface;
 
 /**
@@ -49,9 +58,19 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 	 */
 	private Set<Event> completedEvents;
 
-	private ScoreCache scoreCache;
-	private ResultCache resultCache;
-	private TallyCache tallyCache;
+	private VersionedCache<EventCategories, List<Athlete>> scoreCache;
+	private VersionedCache<EventCategories, Results> resultCache;
+	private VersionedCache<NationCategories, Tally> tallyCache;
+	private StandingsCache standingsCache;
+	private SingleFlight<EventCategories, List<Athlete>> scoreFlights;
+	private SingleFlight<EventCategories, Results> resultFlights;
+	private SingleFlight<NationCategories, Tally> tallyFlights;
+
+	/**
+	 * In proxy-pull mode, refreshes cache entries that are read close to or
+	 * past their expiry, so readers are served the cached value meanwhile.
+	 */
+	private ExecutorService refreshPool;
 
 	/**
 	 * Data structures to manage event subscriptions.private
@@ -68,10 +87,37 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 	private static String SERVICE_FINDER_HOST;
 	private static int SERVICE_FINDER_PORT;
 	private static boolean MASTER_PUSH;
+	private static boolean CHANGE_FEED;
+	private static String EMBEDDED_OPTION = "--embedded";
+	private static boolean EMBEDDED;
+	private static String EMBEDDED_DB_NAME;
+	private static List<String> EMBEDDED_OPTIONS = new ArrayList<String>();
+	private static int FEED_BATCH_SIZE = 512;
 	private static int RETRY_LIMIT = 3;
 	private static int RETRY_WAIT = 3000;
+	private static long SCORE_TTL = 10000;
+	private static long RESULT_TTL = 100000;
+	private static long TALLY_TTL = 30000;
+	private static long ABSENT_TTL = 2000;
+	private static String REFRESH_AHEAD_OPTION = "--refresh-ahead";
+	private static String MAX_STALENESS_OPTION = "--max-stale";
+	private static long REFRESH_AHEAD = 1000;
+	private static long MAX_STALENESS = 2000;
+	private static int REFRESH_THREADS = 2;
+
+	private OrgetorixRouter orgetorixRouter;
+
+	/**
+	 * With --embedded, the Orgetorix running in this JVM, which is called
+	 * directly.
+	 */
+	private Orgetorix embeddedOrgetorix;
 
-	private OrgetorixInterface orgetorixStub;
+	/**
+	 * In change feed mode, the offset of the next change to read from each
+	 * Orgetorix shard.
+	 */
+	private Map<OrgetorixInterface, Long> feedOffsets;
 	// private Lottery lottery = new Lottery();
 	// private boolean lotteryFrozen;
 	// private Integer localRequestCounter = 0;
@@ -91,31 +137,39 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 		this.scoreCacherList = new HashMap<String, Set<EventCategories>>();
 		this.resultCacherList = new HashMap<String, Set<EventCategories>>();
 		this.tallyCacherList = new HashMap<String, Set<NationCategories>>();
-
-		this.tallyCache = new TallyCache();
-		this.scoreCache = new ScoreCache();
-		this.resultCache = new ResultCache();
+		this.feedOffsets = new HashMap<OrgetorixInterface, Long>();
+
+		this.tallyCache = new VersionedCache<NationCategories, Tally>(
+				NationCategories.class, TALLY_TTL);
+		this.standingsCache = new StandingsCache();
+		this.scoreCache = new VersionedCache<EventCategories, List<Athlete>>(
+				EventCategories.class, SCORE_TTL, ABSENT_TTL);
+		this.resultCache = new VersionedCache<EventCategories, Results>(
+				EventCategories.class, RESULT_TTL, ABSENT_TTL);
+		this.scoreFlights = new SingleFlight<EventCategories, List<Athlete>>(
+				EventCategories.class);
+		this.resultFlights = new SingleFlight<EventCategories, Results>(
+				EventCategories.class);
+		this.tallyFlights = new SingleFlight<NationCategories, Tally>(
+				NationCategories.class);
+		this.refreshPool = Executors.newFixedThreadPool(REFRESH_THREADS);
 	}
 
 	/**
-	 * Sets up the Orgetorix (backend process) client stub by looking up the
-	 * address using {@link ServiceFinder}
+	 * Sets up the Orgetorix (backend process) client stubs, one per shard, by
+	 * looking up their addresses using {@link ServiceFinder}
 	 * 
 	 * @throws OlympicException
 	 */
-	private void setupOrgetorixStub() throws OlympicException {
-		Registry registry = null;
+	private void setupOrgetorixRouter() throws OlympicException {
+		this.orgetorixRouter = new OrgetorixRouter(this);
+		if (this.embeddedOrgetorix != null) {
+			this.orgetorixRouter.setEmbedded(this.embeddedOrgetorix);
+		}
 		try {
-			ServerDetail orgetorixDetail = this
-					.getServerDetails(ORGETORIX_SERVICE_NAME);
-			registry = LocateRegistry.getRegistry(
-					orgetorixDetail.getServiceAddress(),
-					orgetorixDetail.getServicePort());
-			OrgetorixInterface orgetorixStub = (OrgetorixInterface) registry
-					.lookup(orgetorixDetail.getServerName());
-			this.orgetorixStub = orgetorixStub;
-		} catch (Exception e) {
-			throw new OlympicException("Could not set up Orgetorix Stub.");
+			this.orgetorixRouter.refresh();
+		} catch (RemoteException e) {
+			throw new OlympicException("Could not set up Orgetorix Stub.", e);
 		}
 	}
 
@@ -193,6 +247,13 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 		return obelixServerInstance;
 	}
 
+	private void setupChangeFeedThread() {
+		Thread feedThread = new Thread(new ChangeFeedFollower(this),
+				"ChangeFeedThread");
+		feedThread.setDaemon(true);
+		feedThread.start();
+	}
+
 	private void setupHeartbeatThread() {
 		Thread heartbeatThread = new Thread(new HeartbeatNotifier(this),
 				"HeartbeatThread");
@@ -201,10 +262,12 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 
 	/**
 	 * Remote method to update results and medal tallies of a completed event.
-	 * Called by Cacophonix when it receives an update from Games.
+	 * Called by Cacophonix when it receives an update from Games. The results
+	 * are stored on the event's shard, and the tallies on the shards of the
+	 * winning nations, each of which is sent the results once.
 	 */
-	public void updateResultsAndTallies(Event simulatedEvent)
-			throws RemoteException {
+	public void updateResultsAndTallies(final Event simulatedEvent,
+			final UpdateId updateId) throws RemoteException {
 		System.err.println("Received updateResultsAndTallies msg.");
 		if (MASTER_PUSH == true) {
 			System.err.println("Invalidating results and tallies in caches.");
@@ -214,8 +277,37 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 						medalType));
 			}
 		}
-		orgetorixStub.updateResultsAndTallies(simulatedEvent);
+		callOrgetorix(OrgetorixRouter.shardKey(simulatedEvent.getName()),
+				new OrgetorixCall<Void>() {
+
+					@Override
+					public Void call(OrgetorixInterface orgetorixStub)
+							throws RemoteException {
+						orgetorixStub.updateResults(simulatedEvent, updateId);
+						return null;
+					}
+				});
+		this.resultCache.invalidateAbsent(simulatedEvent.getName());
+
+		final Results eventResult = simulatedEvent.getResult();
+		Set<OrgetorixInterface> creditedShards = new HashSet<OrgetorixInterface>();
+		for (MedalCategories medalType : MedalCategories.values()) {
+			int shardKey = OrgetorixRouter.shardKey(eventResult
+					.getTeam(medalType));
+			if (!creditedShards.add(this.orgetorixRouter.getShard(shardKey))) {
+				continue;
+			}
+			callOrgetorix(shardKey, new OrgetorixCall<Void>() {
 
+				@Override
+				public Void call(OrgetorixInterface orgetorixStub)
+						throws RemoteException {
+					orgetorixStub.updateMedalTallies(eventResult, updateId);
+					return null;
+				}
+			});
+		}
+		this.standingsCache.invalidate();
 	}
 
 	/**
@@ -224,15 +316,27 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 	 * 
 	 * @param eventResult
 	 */
-	public void updateCurrentScores(EventCategories eventName,
-			List<Athlete> currentScores) throws RemoteException {
+	public void updateCurrentScores(final EventCategories eventName,
+			final List<Athlete> currentScores, final UpdateId updateId)
+			throws RemoteException {
 		System.err.println("Received updateCurrentScores msg.");
 		if (MASTER_PUSH == true) {
 			System.err.println("Invalidating scores in caches.");
 			this.cleanUpScoreCaches(eventName);
 		}
 		pushCurrentScores(eventName, currentScores);
-		orgetorixStub.updateCurrentScores(eventName, currentScores);
+		callOrgetorix(OrgetorixRouter.shardKey(eventName),
+				new OrgetorixCall<Void>() {
+
+					@Override
+					public Void call(OrgetorixInterface orgetorixStub)
+							throws RemoteException {
+						orgetorixStub.updateCurrentScores(eventName,
+								currentScores, updateId);
+						return null;
+					}
+				});
+		this.scoreCache.invalidateAbsent(eventName);
 	}
 
 	/**
@@ -280,40 +384,17 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 		try {
 			// this.notifyEvent(clientID);
 			try {
-				Results result = null;
-				if (MASTER_PUSH == false) {
-					result = this.resultCache.getResults(eventName,
-							System.currentTimeMillis());
-				} else {
-					result = this.resultCache.getResults(eventName);
-				}
+				Results result = getCachedResults(eventName);
 				System.out.println("Sending results for " + eventName
 						+ " from cache.");
 				return result;
 			} catch (OlympicException o) {
-				if (MASTER_PUSH == true) {
+				if (MASTER_PUSH == true && CHANGE_FEED == false) {
 					ObelixInterface masterStub = this.getObelixMasterStub();
 					masterStub.notifyResultCaching(this.getServerName(),
 							eventName);
 				}
-
-				Results result = orgetorixStub.getResults(eventName);
-
-				System.out.println("Sending results for " + eventName
-						+ " from database.");
-
-				if (result == null) {
-					return null;
-				}
-				if (MASTER_PUSH == false) {
-					this.resultCache.cache(eventName, result,
-							System.currentTimeMillis());
-				} else {
-					this.resultCache.cache(eventName, result);
-
-				}
-
-				return result;
+				return loadResults(eventName);
 			}
 		} catch (RemoteException | NotBoundException e) {
 			return null;
@@ -321,6 +402,72 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 
 	}
 
+	/**
+	 * @return The cached results of an event. In proxy-pull mode they may be
+	 *         stale by up to MAX_STALENESS, and are refreshed in the
+	 *         background if they are stale or about to be.
+	 * @throws OlympicException
+	 *             If they are not cached, or stale.
+	 */
+	private Results getCachedResults(EventCategories eventName)
+			throws OlympicException {
+		if (MASTER_PUSH == false && CHANGE_FEED == false) {
+			long currentTime = System.currentTimeMillis();
+			Results result = this.resultCache.get(eventName, currentTime, MAX_STALENESS);
+			if (this.resultCache.isExpiring(eventName, currentTime, REFRESH_AHEAD)) {
+				refreshResults(eventName);
+			}
+			return result;
+		}
+		return this.resultCache.get(eventName);
+	}
+
+	/**
+	 * Fetches the results of an event on a cache miss, sharing the fetch with
+	 * every other request missing on the event at the same time.
+	 */
+	private Results loadResults(final EventCategories eventName)
+			throws RemoteException {
+		return this.resultFlights.fetch(eventName,
+				new SingleFlight.Loader<Results>() {
+
+					@Override
+					public Results load() throws RemoteException {
+						try {
+							Results result = getCachedResults(eventName);
+							System.out.println("Sending results for "
+									+ eventName + " from cache.");
+							return result;
+						} catch (OlympicException o) {
+						}
+						if (CHANGE_FEED == true) {
+							// Only the change feed fills the cache, so a read
+							// never overwrites an update applied from the
+							// feed.
+							return getResultsIfNewer(eventName,
+									Versioned.NO_VERSION).getValue();
+						}
+						if (MASTER_PUSH == false) {
+							return pullResults(eventName);
+						}
+						long absentGeneration = resultCache
+								.getAbsentGeneration(eventName);
+						Results result = getResultsIfNewer(eventName,
+								Versioned.NO_VERSION).getValue();
+						System.out.println("Sending results for " + eventName
+								+ " from database.");
+						if (result == null) {
+							resultCache.cacheAbsent(eventName, null,
+									System.currentTimeMillis(),
+									Versioned.NO_VERSION, absentGeneration);
+						} else {
+							resultCache.cache(eventName, result);
+						}
+						return result;
+					}
+				});
+	}
+
 	/**
 	 * Remote function that can be called by clients to get the current scores
 	 * of an on going event.
@@ -330,38 +477,17 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 		try {
 			// this.notifyEvent(clientID);
 			try {
-				List<Athlete> scores = null;
-				if (MASTER_PUSH == false) {
-					scores = this.scoreCache.getScores(eventName,
-							System.currentTimeMillis());
-				} else {
-					scores = this.scoreCache.getScores(eventName);
-				}
+				List<Athlete> scores = getCachedScores(eventName);
 				System.out.println("Sending current scores for " + eventName
 						+ " from cache.");
 				return scores;
 			} catch (OlympicException o) {
-				if (MASTER_PUSH == true) {
+				if (MASTER_PUSH == true && CHANGE_FEED == false) {
 					ObelixInterface masterStub = this.getObelixMasterStub();
 					masterStub.notifyScoreCaching(this.getServerName(),
 							eventName);
 				}
-				List<Athlete> scores = orgetorixStub
-						.getCurrentScores(eventName);
-
-				System.out.println("Sending current scores for " + eventName
-						+ " from database.");
-				if (scores == null) {
-					return null;
-				}
-				if (MASTER_PUSH == false) {
-					this.scoreCache.cache(eventName, scores,
-							System.currentTimeMillis());
-				} else {
-					this.scoreCache.cache(eventName, scores);
-
-				}
-				return scores;
+				return loadCurrentScores(eventName);
 			}
 		} catch (RemoteException | NotBoundException e) {
 			return null;
@@ -369,6 +495,72 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 		}
 	}
 
+	/**
+	 * @return The cached scores of an event, refreshed ahead in proxy-pull
+	 *         mode like {@link #getCachedResults(EventCategories)}.
+	 * @throws OlympicException
+	 *             If they are not cached, or stale.
+	 */
+	private List<Athlete> getCachedScores(EventCategories eventName)
+			throws OlympicException {
+		if (MASTER_PUSH == false && CHANGE_FEED == false) {
+			long currentTime = System.currentTimeMillis();
+			List<Athlete> scores = this.scoreCache.get(eventName, currentTime, MAX_STALENESS);
+			if (this.scoreCache.isExpiring(eventName, currentTime, REFRESH_AHEAD)) {
+				refreshCurrentScores(eventName);
+			}
+			return scores;
+		}
+		return this.scoreCache.get(eventName);
+	}
+
+	/**
+	 * Fetches the current scores of an event on a cache miss, like
+	 * {@link #loadResults(EventCategories)}.
+	 */
+	private List<Athlete> loadCurrentScores(final EventCategories eventName)
+			throws RemoteException {
+		return this.scoreFlights.fetch(eventName,
+				new SingleFlight.Loader<List<Athlete>>() {
+
+					@Override
+					public List<Athlete> load() throws RemoteException {
+						try {
+							List<Athlete> scores = getCachedScores(eventName);
+							System.out.println("Sending current scores for "
+									+ eventName + " from cache.");
+							return scores;
+						} catch (OlympicException o) {
+						}
+						if (CHANGE_FEED == true) {
+							// Only the change feed fills the cache, so a read
+							// never overwrites an update applied from the
+							// feed.
+							return getCurrentScoresIfNewer(eventName,
+									Versioned.NO_VERSION).getValue();
+						}
+						if (MASTER_PUSH == false) {
+							return pullCurrentScores(eventName);
+						}
+						long absentGeneration = scoreCache
+								.getAbsentGeneration(eventName);
+						List<Athlete> scores = getCurrentScoresIfNewer(
+								eventName, Versioned.NO_VERSION).getValue();
+						System.out.println("Sending current scores for "
+								+ eventName + " from database.");
+						if (scores == null || scores.isEmpty()) {
+							scoreCache.cacheAbsent(eventName, scores,
+									System.currentTimeMillis(),
+									Versioned.NO_VERSION, absentGeneration);
+						} else {
+							scoreCache.cache(eventName,
+									AthleteScores.of(scores));
+						}
+						return scores;
+					}
+				});
+	}
+
 	/**
 	 * Remote function that can be called by clients to get the medal tally of a
 	 * particular team.
@@ -377,42 +569,563 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 		try {
 			// this.notifyEvent(clientID);
 			try {
-				Tally medalTally = null;
-				if (MASTER_PUSH == false) {
-					medalTally = this.tallyCache.getTally(teamName,
-							System.currentTimeMillis());
-				} else {
-					medalTally = this.tallyCache.getTally(teamName);
-				}
+				Tally medalTally = getCachedTally(teamName);
 				System.out.println("Sending medal tally for " + teamName
 						+ " from cache.");
 				return medalTally;
 			} catch (OlympicException o) {
-				if (MASTER_PUSH == true) {
+				if (MASTER_PUSH == true && CHANGE_FEED == false) {
 					ObelixInterface masterStub = this.getObelixMasterStub();
 					masterStub.notifyTallyCaching(this.getServerName(),
 							teamName);
 				}
-				Tally medalTally = orgetorixStub.getMedalTally(teamName);
-				System.out.println("Sending medal tally for " + teamName
-						+ " from database.");
-				if (medalTally == null) {
-					return null;
+				return loadMedalTally(teamName);
+			}
+		} catch (RemoteException | NotBoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return The cached medal tally of a team, refreshed ahead in proxy-pull
+	 *         mode like {@link #getCachedResults(EventCategories)}.
+	 * @throws OlympicException
+	 *             If it is not cached, or stale.
+	 */
+	private Tally getCachedTally(NationCategories teamName)
+			throws OlympicException {
+		if (MASTER_PUSH == false && CHANGE_FEED == false) {
+			long currentTime = System.currentTimeMillis();
+			Tally medalTally = this.tallyCache.get(teamName, currentTime, MAX_STALENESS);
+			if (this.tallyCache.isExpiring(teamName, currentTime, REFRESH_AHEAD)) {
+				refreshMedalTally(teamName);
+			}
+			return medalTally;
+		}
+		return this.tallyCache.get(teamName);
+	}
+
+	/**
+	 * Fetches the medal tally of a team on a cache miss, like
+	 * {@link #loadResults(EventCategories)}.
+	 */
+	private Tally loadMedalTally(final NationCategories teamName)
+			throws RemoteException {
+		return this.tallyFlights.fetch(teamName,
+				new SingleFlight.Loader<Tally>() {
+
+					@Override
+					public Tally load() throws RemoteException {
+						try {
+							Tally medalTally = getCachedTally(teamName);
+							System.out.println("Sending medal tally for "
+									+ teamName + " from cache.");
+							return medalTally;
+						} catch (OlympicException o) {
+						}
+						if (CHANGE_FEED == true) {
+							// Only the change feed fills the cache, so a read
+							// never overwrites an update applied from the
+							// feed.
+							return getMedalTallyIfNewer(teamName,
+									Versioned.NO_VERSION).getValue();
+						}
+						if (MASTER_PUSH == false) {
+							return pullMedalTally(teamName);
+						}
+						Tally medalTally = getMedalTallyIfNewer(teamName,
+								Versioned.NO_VERSION).getValue();
+						System.out.println("Sending medal tally for "
+								+ teamName + " from database.");
+						if (medalTally != null) {
+							tallyCache.cache(teamName, medalTally);
+						}
+						return medalTally;
+					}
+				});
+	}
+
+	/**
+	 * Remote function that can be called by clients to get the medal tallies
+	 * of every nation at once. They are served from the tally cache if it
+	 * holds a fresh tally for every nation, and otherwise read from each
+	 * Orgetorix shard in one call.
+	 */
+	public Map<NationCategories, Tally> getAllTallies(String clientID)
+			throws RemoteException {
+		Map<NationCategories, Tally> medalTallies = getCachedTallies();
+		if (medalTallies != null) {
+			System.out.println("Sending all medal tallies from cache.");
+			return medalTallies;
+		}
+		Map<NationCategories, Versioned<Tally>> versionedTallies = new EnumMap<NationCategories, Versioned<Tally>>(
+				NationCategories.class);
+		for (int shardKey : this.orgetorixRouter.getShardKeys()) {
+			versionedTallies.putAll(callOrgetorix(shardKey,
+					new OrgetorixCall<Map<NationCategories, Versioned<Tally>>>() {
+
+						@Override
+						public Map<NationCategories, Versioned<Tally>> call(
+								OrgetorixInterface orgetorixStub)
+								throws RemoteException {
+							return orgetorixStub.getAllTallies();
+						}
+					}));
+		}
+		medalTallies = new EnumMap<NationCategories, Tally>(
+				NationCategories.class);
+		long currentTime = System.currentTimeMillis();
+		for (Map.Entry<NationCategories, Versioned<Tally>> entry : versionedTallies
+				.entrySet()) {
+			medalTallies.put(entry.getKey(), entry.getValue().getValue());
+			// Cached entries in master push mode are only invalidated once
+			// the master has been notified, and in change feed mode only the
+			// feed fills the cache, so only proxy pull caches the bulk read.
+			// A tally pulled since the bulk read began is not replaced.
+			if (MASTER_PUSH == false && CHANGE_FEED == false) {
+				this.tallyCache.cacheIfNewer(entry.getKey(), entry.getValue()
+						.getValue(), currentTime, entry.getValue()
+						.getVersion());
+			}
+		}
+		System.out.println("Sending all medal tallies from database.");
+		return medalTallies;
+	}
+
+	/**
+	 * @return A cached tally for every nation, as
+	 *         {@link #getCachedTally(NationCategories)} would serve it, or
+	 *         null if any is missing or stale.
+	 */
+	private Map<NationCategories, Tally> getCachedTallies() {
+		Map<NationCategories, Tally> medalTallies = new EnumMap<NationCategories, Tally>(
+				NationCategories.class);
+		try {
+			for (NationCategories nation : NationCategories.values()) {
+				medalTallies.put(nation, getCachedTally(nation));
+			}
+		} catch (OlympicException e) {
+			return null;
+		}
+		return medalTallies;
+	}
+
+	/**
+	 * Remote function that can be called by clients to get the scores,
+	 * results and tallies of the whole games in one call. The snapshot is
+	 * always read from Orgetorix, one call per shard, so it is never pieced
+	 * together from cache entries of different ages.
+	 */
+	public GamesSnapshot getGamesSnapshot(String clientID)
+			throws RemoteException {
+		GamesSnapshot snapshot = null;
+		for (int shardKey : this.orgetorixRouter.getShardKeys()) {
+			GamesSnapshot shardSnapshot = callOrgetorix(shardKey,
+					new OrgetorixCall<GamesSnapshot>() {
+
+						@Override
+						public GamesSnapshot call(
+								OrgetorixInterface orgetorixStub)
+								throws RemoteException {
+							return orgetorixStub.getGamesSnapshot();
+						}
+					});
+			if (snapshot == null) {
+				snapshot = shardSnapshot;
+			} else {
+				snapshot.merge(shardSnapshot);
+			}
+		}
+		System.out.println("Sending games snapshot from database.");
+		return snapshot;
+	}
+
+	/**
+	 * Remote function that can be called by clients to get the leading
+	 * nations of the medal table. The whole table is cached as one object,
+	 * invalidated whenever a medal is credited, and merged from the tables of
+	 * the Orgetorix shards only on a miss; each request is served a slice of
+	 * it.
+	 */
+	public Standings getStandings(int topN, String clientID)
+			throws RemoteException {
+		try {
+			Standings standings = null;
+			if (MASTER_PUSH == false && CHANGE_FEED == false) {
+				standings = this.standingsCache.getStandings(System
+						.currentTimeMillis());
+			} else {
+				standings = this.standingsCache.getStandings();
+			}
+			System.out.println("Sending standings from cache.");
+			return standings.getTop(topN);
+		} catch (OlympicException o) {
+			if (MASTER_PUSH == true) {
+				try {
+					ObelixInterface masterStub = this.getObelixMasterStub();
+					for (NationCategories nation : NationCategories.values()) {
+						masterStub.notifyTallyCaching(this.getServerName(),
+								nation);
+					}
+				} catch (NotBoundException e) {
+					throw new RemoteException("Could not find master.", e);
 				}
-				if (MASTER_PUSH == false) {
-					this.tallyCache.cache(teamName, medalTally,
-							System.currentTimeMillis());
-				} else {
-					this.tallyCache.cache(teamName, medalTally);
+			}
+			long generation = this.standingsCache.getGeneration();
+			long currentTime = System.currentTimeMillis();
+			Standings standings = null;
+			for (int shardKey : this.orgetorixRouter.getShardKeys()) {
+				Standings shardStandings = callOrgetorix(shardKey,
+						new OrgetorixCall<Standings>() {
+
+							@Override
+							public Standings call(
+									OrgetorixInterface orgetorixStub)
+									throws RemoteException {
+								return orgetorixStub
+										.getStandings(Integer.MAX_VALUE);
+							}
+						});
+				standings = (standings == null) ? shardStandings : Standings
+						.merge(standings, shardStandings);
+			}
+			this.standingsCache.cache(standings, currentTime, generation);
+			System.out.println("Sending standings from database.");
+			return standings.getTop(topN);
+		}
+	}
+
+	/**
+	 * Reads the next batch of changes from the change feed of every Orgetorix
+	 * shard and applies them to the caches. A shard read for the first time,
+	 * such as a standby promoted in place of a failed primary, sends its whole
+	 * state first.
+	 * 
+	 * @return The number of changes applied.
+	 * @throws RemoteException
+	 *             If a shard could not be reached.
+	 */
+	public int followChangeFeed() throws RemoteException {
+		int applied = 0;
+		Set<OrgetorixInterface> shardStubs = new HashSet<OrgetorixInterface>();
+		try {
+			for (int shardKey : this.orgetorixRouter.getShardKeys()) {
+				OrgetorixInterface shardStub = this.orgetorixRouter
+						.getShard(shardKey);
+				Long offset = this.feedOffsets.get(shardStub);
+				ChangeBatch batch = shardStub.getChangesSince(
+						(offset == null) ? -1 : offset, FEED_BATCH_SIZE);
+				for (Change change : batch.getChanges()) {
+					applyChange(change);
 				}
+				this.feedOffsets.put(shardStub, batch.getNextOffset());
+				shardStubs.add(shardStub);
+				applied += batch.getChanges().size();
+			}
+		} catch (RemoteException e) {
+			this.orgetorixRouter.invalidate();
+			throw e;
+		}
+		// Offsets are only meaningful to the server that issued them.
+		this.feedOffsets.keySet().retainAll(shardStubs);
+		return applied;
+	}
 
-				return medalTally;
+	private void applyChange(Change change) {
+		switch (change.getType()) {
+		case SCORES:
+			this.scoreCache.cache(change.getEventName(),
+					AthleteScores.of(change.getScores()));
+			break;
+		case RESULTS:
+			this.resultCache.cache(change.getEventName(),
+					change.getEventResult());
+			break;
+		case TALLIES:
+			this.tallyCache.cache(change.getNation(), change.getMedalTally());
+			this.standingsCache.invalidate();
+			break;
+		}
+	}
+
+	/**
+	 * A call to Orgetorix, which can be made again against another Orgetorix
+	 * server after a failover.
+	 */
+	private interface OrgetorixCall<T> {
+		public T call(OrgetorixInterface orgetorixStub) throws RemoteException;
+	}
+
+	/**
+	 * Makes a call to the Orgetorix shard holding a key. If the server cannot
+	 * be reached, the shards are looked up again through {@link ServiceFinder},
+	 * which lists the promoted standby once the primary has failed, and the
+	 * call is retried. Errors raised by Orgetorix itself, including every error
+	 * of an embedded Orgetorix, are not retried.
+	 * Updates are retried with the id they were sent with, so one that reached
+	 * Orgetorix before the connection failed is not applied twice.
+	 * 
+	 * @param shardKey
+	 * @param call
+	 * @return The result of the call.
+	 * @throws RemoteException
+	 */
+	private <T> T callOrgetorix(int shardKey, OrgetorixCall<T> call)
+			throws RemoteException {
+		for (int i = 0;; i++) {
+			OrgetorixInterface orgetorixStub = null;
+			try {
+				orgetorixStub = this.orgetorixRouter.getShard(shardKey);
+				return call.call(orgetorixStub);
+			} catch (ServerException e) {
+				throw e;
+			} catch (RemoteException e) {
+				if (i >= RETRY_LIMIT
+						|| this.orgetorixRouter.isEmbedded(orgetorixStub)) {
+					throw e;
+				}
+				System.err.println("Orgetorix unreachable, looking it up again.");
+				try {
+					Thread.sleep(RETRY_WAIT);
+					this.orgetorixRouter.refresh();
+				} catch (InterruptedException | RemoteException e1) {
+					e1.printStackTrace();
+				}
 			}
-		} catch (RemoteException | NotBoundException e) {
-			return null;
 		}
 	}
 
+	private Versioned<Results> getResultsIfNewer(
+			final EventCategories eventName, final long version)
+			throws RemoteException {
+		return callOrgetorix(OrgetorixRouter.shardKey(eventName),
+				new OrgetorixCall<Versioned<Results>>() {
+
+					@Override
+					public Versioned<Results> call(
+							OrgetorixInterface orgetorixStub)
+							throws RemoteException {
+						return orgetorixStub.getResultsIfNewer(eventName,
+								version);
+					}
+				});
+	}
+
+	private Versioned<List<Athlete>> getCurrentScoresIfNewer(
+			final EventCategories eventName, final long version)
+			throws RemoteException {
+		return callOrgetorix(OrgetorixRouter.shardKey(eventName),
+				new OrgetorixCall<Versioned<List<Athlete>>>() {
+
+					@Override
+					public Versioned<List<Athlete>> call(
+							OrgetorixInterface orgetorixStub) throws RemoteException {
+						return orgetorixStub.getCurrentScoresIfNewer(eventName,
+								version);
+					}
+				});
+	}
+
+	private Versioned<Tally> getMedalTallyIfNewer(
+			final NationCategories teamName, final long version)
+			throws RemoteException {
+		return callOrgetorix(OrgetorixRouter.shardKey(teamName),
+				new OrgetorixCall<Versioned<Tally>>() {
+
+					@Override
+					public Versioned<Tally> call(
+							OrgetorixInterface orgetorixStub)
+							throws RemoteException {
+						return orgetorixStub.getMedalTallyIfNewer(teamName,
+								version);
+					}
+				});
+	}
+
+	/**
+	 * Starts a background proxy-pull fetch of the results of an event, unless
+	 * one is already in flight. Requests missing on the event meanwhile share
+	 * it.
+	 */
+	private void refreshResults(final EventCategories eventName) {
+		this.resultFlights.fetchInBackground(eventName,
+				new SingleFlight.Loader<Results>() {
+
+					@Override
+					public Results load() throws RemoteException {
+						try {
+							if (!resultCache.isExpiring(eventName,
+									System.currentTimeMillis(), REFRESH_AHEAD)) {
+								return resultCache.get(eventName);
+							}
+						} catch (OlympicException o) {
+						}
+						return pullResults(eventName);
+					}
+				}, this.refreshPool);
+	}
+
+	/**
+	 * Starts a background proxy-pull fetch of the current scores of an event,
+	 * like {@link #refreshResults(EventCategories)}.
+	 */
+	private void refreshCurrentScores(final EventCategories eventName) {
+		this.scoreFlights.fetchInBackground(eventName,
+				new SingleFlight.Loader<List<Athlete>>() {
+
+					@Override
+					public List<Athlete> load() throws RemoteException {
+						try {
+							if (!scoreCache.isExpiring(eventName,
+									System.currentTimeMillis(), REFRESH_AHEAD)) {
+								return scoreCache.get(eventName);
+							}
+						} catch (OlympicException o) {
+						}
+						return pullCurrentScores(eventName);
+					}
+				}, this.refreshPool);
+	}
+
+	/**
+	 * Starts a background proxy-pull fetch of the medal tally of a team, like
+	 * {@link #refreshResults(EventCategories)}.
+	 */
+	private void refreshMedalTally(final NationCategories teamName) {
+		this.tallyFlights.fetchInBackground(teamName,
+				new SingleFlight.Loader<Tally>() {
+
+					@Override
+					public Tally load() throws RemoteException {
+						try {
+							if (!tallyCache.isExpiring(teamName,
+									System.currentTimeMillis(), REFRESH_AHEAD)) {
+								return tallyCache.get(teamName);
+							}
+						} catch (OlympicException o) {
+						}
+						return pullMedalTally(teamName);
+					}
+				}, this.refreshPool);
+	}
+
+	/**
+	 * Proxy-pull fetch of the results of an event. Once a cached entry has
+	 * expired, Orgetorix is asked for the results only if their version has
+	 * changed; otherwise the cached entry is simply marked fresh again. An
+	 * event that has not completed is cached as absent, for ABSENT_TTL or
+	 * until its results are updated through this Obelix.
+	 * 
+	 * @param eventName
+	 * @return The results, or null if the event has not completed.
+	 * @throws RemoteException
+	 */
+	private Results pullResults(EventCategories eventName)
+			throws RemoteException {
+		long absentGeneration = this.resultCache.getAbsentGeneration(eventName);
+		long cachedVersion = this.resultCache.getVersion(eventName);
+		Versioned<Results> versionedResult = getResultsIfNewer(eventName,
+				cachedVersion);
+		long currentTime = System.currentTimeMillis();
+		if (!versionedResult.isModified()) {
+			Versioned<Results> cachedResult = this.resultCache.revalidate(
+					eventName, cachedVersion, currentTime);
+			if (cachedResult != null) {
+				System.out.println("Sending results for " + eventName
+						+ " from revalidated cache.");
+				return cachedResult.getValue();
+			}
+			versionedResult = getResultsIfNewer(eventName,
+					Versioned.NO_VERSION);
+		}
+		System.out.println("Sending results for " + eventName
+				+ " from database.");
+		Results result = versionedResult.getValue();
+		if (result == null) {
+			this.resultCache.cacheAbsent(eventName, null, currentTime,
+					versionedResult.getVersion(), absentGeneration);
+		} else {
+			this.resultCache.cache(eventName, result, currentTime,
+					versionedResult.getVersion());
+		}
+		return result;
+	}
+
+	/**
+	 * Proxy-pull fetch of the current scores of an event, revalidated by
+	 * version like {@link #pullResults(EventCategories)}. Scores of an event
+	 * that has not started, null or empty, are cached as absent.
+	 * 
+	 * @param eventName
+	 * @return List<Athlete>
+	 * @throws RemoteException
+	 */
+	private List<Athlete> pullCurrentScores(EventCategories eventName)
+			throws RemoteException {
+		long absentGeneration = this.scoreCache.getAbsentGeneration(eventName);
+		long cachedVersion = this.scoreCache.getVersion(eventName);
+		Versioned<List<Athlete>> versionedScores = getCurrentScoresIfNewer(
+				eventName, cachedVersion);
+		long currentTime = System.currentTimeMillis();
+		if (!versionedScores.isModified()) {
+			Versioned<List<Athlete>> cachedScores = this.scoreCache.revalidate(
+					eventName, cachedVersion, currentTime);
+			if (cachedScores != null) {
+				System.out.println("Sending current scores for " + eventName
+						+ " from revalidated cache.");
+				return cachedScores.getValue();
+			}
+			versionedScores = getCurrentScoresIfNewer(eventName,
+					Versioned.NO_VERSION);
+		}
+		System.out.println("Sending current scores for " + eventName
+				+ " from database.");
+		List<Athlete> scores = versionedScores.getValue();
+		if (scores == null || scores.isEmpty()) {
+			this.scoreCache.cacheAbsent(eventName, scores, currentTime,
+					versionedScores.getVersion(), absentGeneration);
+		} else {
+			this.scoreCache.cache(eventName, AthleteScores.of(scores),
+					currentTime, versionedScores.getVersion());
+		}
+		return scores;
+	}
+
+	/**
+	 * Proxy-pull fetch of the medal tally of a team, revalidated by version
+	 * like {@link #pullResults(EventCategories)}.
+	 * 
+	 * @param teamName
+	 * @return Tally
+	 * @throws RemoteException
+	 */
+	private Tally pullMedalTally(NationCategories teamName)
+			throws RemoteException {
+		long cachedVersion = this.tallyCache.getVersion(teamName);
+		Versioned<Tally> versionedTally = getMedalTallyIfNewer(teamName,
+				cachedVersion);
+		long currentTime = System.currentTimeMillis();
+		if (!versionedTally.isModified()) {
+			Versioned<Tally> cachedTally = this.tallyCache.revalidate(
+					teamName, cachedVersion, currentTime);
+			if (cachedTally != null) {
+				System.out.println("Sending medal tally for " + teamName
+						+ " from revalidated cache.");
+				return cachedTally.getValue();
+			}
+			versionedTally = getMedalTallyIfNewer(teamName,
+					Versioned.NO_VERSION);
+		}
+		System.out.println("Sending medal tally for " + teamName
+				+ " from database.");
+		Tally medalTally = versionedTally.getValue();
+		if (medalTally != null) {
+			this.tallyCache.cache(teamName, medalTally, currentTime,
+					versionedTally.getVersion());
+		}
+		return medalTally;
+	}
+
 	/**
 	 * Remote function that can be called by a client to create a subscription
 	 * to a particular event.
@@ -576,19 +1289,76 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 		}
 	}
 
+	/**
+	 * Starts the Orgetorix this Obelix hosts when run with --embedded. It
+	 * registers with {@link ServiceFinder} before the shards are looked up, so
+	 * the router finds it and maps its keys to it.
+	 * 
+	 * @throws OlympicException
+	 */
+	private void setupEmbeddedOrgetorix() throws OlympicException {
+		this.embeddedOrgetorix = Orgetorix.startEmbedded(SERVICE_FINDER_HOST,
+				SERVICE_FINDER_PORT, EMBEDDED_DB_NAME,
+				EMBEDDED_OPTIONS.toArray(new String[EMBEDDED_OPTIONS.size()]));
+	}
+
+	/**
+	 * Separates the refresh-ahead options, --embedded, and the options after
+	 * the mode that are passed on to the embedded Orgetorix, from the
+	 * positional arguments.
+	 * 
+	 * @param options
+	 * @return The remaining arguments.
+	 */
+	private static String[] parseOptions(String[] options) {
+		List<String> args = new ArrayList<String>();
+		for (String option : options) {
+			if (option.startsWith(REFRESH_AHEAD_OPTION + "=")) {
+				REFRESH_AHEAD = Long.parseLong(option
+						.substring(REFRESH_AHEAD_OPTION.length() + 1));
+			} else if (option.startsWith(MAX_STALENESS_OPTION + "=")) {
+				MAX_STALENESS = Long.parseLong(option
+						.substring(MAX_STALENESS_OPTION.length() + 1));
+			} else if (option.equals(EMBEDDED_OPTION)) {
+				EMBEDDED = true;
+			} else if (option.startsWith(EMBEDDED_OPTION + "=")) {
+				EMBEDDED = true;
+				EMBEDDED_DB_NAME = option.substring(EMBEDDED_OPTION.length() + 1);
+			} else if (!args.isEmpty() && option.startsWith("--")) {
+				EMBEDDED_OPTIONS.add(option);
+			} else {
+				args.add(option);
+			}
+		}
+		if (!EMBEDDED && !EMBEDDED_OPTIONS.isEmpty()) {
+			System.out.println("Orgetorix options need " + EMBEDDED_OPTION + ".");
+			usage();
+			System.exit(-1);
+		}
+		return args.toArray(new String[args.size()]);
+	}
+
 	/**
 	 * Sets up Obelix's client and server stubs so it may perform it's function
 	 * of servicing client requests and registering updates from Cacophonix.
 	 * 
-	 * @param args
+	 * @param options
 	 * @throws Exception
 	 */
-	public static void main(String args[]) throws OlympicException {
+	public static void main(String options[]) throws OlympicException {
+		String[] args = parseOptions(options);
+		if (args.length < 1) {
+			usage();
+			System.exit(-1);
+		}
 		// Bind the remote object's stub in the registry
 		if (args[0].compareTo("--masterpush") == 0) {
 			MASTER_PUSH = true;
 		} else if (args[0].compareTo("--proxypull") == 0) {
 			MASTER_PUSH = false;
+		} else if (args[0].compareTo("--changefeed") == 0) {
+			MASTER_PUSH = false;
+			CHANGE_FEED = true;
 		} else {
 			usage();
 			System.exit(-1);
@@ -614,7 +1384,13 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 					regService.getLocalIPAddress());
 			obelixInstance.setupObelixServer(regService);
 			obelixInstance.setupHeartbeatThread();
-			obelixInstance.setupOrgetorixStub();
+			if (EMBEDDED) {
+				obelixInstance.setupEmbeddedOrgetorix();
+			}
+			obelixInstance.setupOrgetorixRouter();
+			if (CHANGE_FEED == true) {
+				obelixInstance.setupChangeFeedThread();
+			}
 			// obelixInstance.initiateElection();
 		} catch (IOException e) {
 			throw new OlympicException(
@@ -626,8 +1402,12 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 	private static void usage() {
 		System.out
 				.println("java -cp ./bin/ -Djava.rmi.server.codebase=file:./bin/"
-						+ " server.Obelix <insert host address displayed by ServiceFinder>"
-						+ " <insert port number displayed by ServiceFinder> [RMI_PORT]");
+						+ " server.Obelix <--masterpush | --proxypull | --changefeed>"
+						+ " <insert host address displayed by ServiceFinder>"
+						+ " <insert port number displayed by ServiceFinder> [RMI_PORT]"
+						+ " [" + REFRESH_AHEAD_OPTION + "=MS] ["
+						+ MAX_STALENESS_OPTION + "=MS]"
+						+ " [" + EMBEDDED_OPTION + "[=DB_NAME] [Orgetorix options]]");
 	}
 
 	// /**
@@ -855,11 +1635,11 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 	public void notifyResultCaching(String serverID, EventCategories eventName)
 			throws RemoteException {
 		Set<EventCategories> cachedResults = new HashSet<EventCategories>();
-		if (this.scoreCacherList.containsKey(serverID)) {
-			cachedResults = this.scoreCacherList.get(serverID);
+		if (this.resultCacherList.containsKey(serverID)) {
+			cachedResults = this.resultCacherList.get(serverID);
 		}
 		cachedResults.add(eventName);
-		this.scoreCacherList.put(serverID, cachedResults);
+		this.resultCacherList.put(serverID, cachedResults);
 
 	}
 
@@ -877,19 +1657,20 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 	@Override
 	public void invalidateScores(EventCategories eventName) {
 		System.out.println("Invalidating score cache for " + eventName + " .");
-		this.scoreCache.invalidateEntry(eventName);
+		this.scoreCache.invalidate(eventName);
 	}
 
 	@Override
 	public void invalidateResults(EventCategories eventName) {
 		System.out.println("Invalidating result cache for " + eventName + " .");
-		this.resultCache.invalidateEntry(eventName);
+		this.resultCache.invalidate(eventName);
 	}
 
 	@Override
 	public void invalidateTallies(NationCategories nation) {
 		System.out.println("Invalidating tally cache for " + nation + " .");
-		this.tallyCache.invalidateEntry(nation);
+		this.tallyCache.invalidate(nation);
+		this.standingsCache.invalidate();
 	}
 
 	private void cleanUpTallyCaches(NationCategories nation)
@@ -955,44 +1736,10 @@ public class Obelix extends ServiceComponent implements ObelixInterface {
 
 	@Override
 	public void clearCaches() throws RemoteException {
-		synchronized (this.tallyCache) {
-			this.tallyCache = new TallyCache();
-		}
+		this.tallyCache.clear();
+		this.scoreCache.clear();
+		this.resultCache.clear();
 
-		synchronized (this.scoreCache) {
-			this.scoreCache = new ScoreCache();
-		}
-
-		synchronized (this.resultCache) {
-			this.resultCache = new ResultCache();
-		}
+		this.standingsCache.invalidate();
 	}
 }
-
-class HeartbeatNotifier implements Runnable {
-
-	private Obelix obelixInstance;
-	private static int BEAT_PERIOD = 3000;
-
-	public HeartbeatNotifier() {
-	}
-
-	public HeartbeatNotifier(Obelix obelixInstance) {
-		this.obelixInstance = obelixInstance;
-	}
-
-	@Override
-	public void run() {
-		while (true) {
-			try {
-				obelixInstance.beat(obelixInstance.getServerName());
-				// System.err.println("Sending heartbeat msg.");
-				Thread.sleep(BEAT_PERIOD);
-			} catch (RemoteException e) {
-				e.printStackTrace();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-	}
-}
\ No newline at end of file
@@ -3,14 +3,18 @@ package server;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Map;
 
 import util.ServerDetail;
 import base.Athlete;
 import base.Event;
 import base.EventCategories;
+import base.GamesSnapshot;
 import base.NationCategories;
 import base.Results;
+import base.Standings;
 import base.Tally;
+import base.UpdateId;
 
 /**
  * Declares the functions exported by Obelix.
@@ -19,15 +23,25 @@ import base.Tally;
  * 
  */
 public interface ObelixInterface extends Remote {
-	public void updateResultsAndTallies(Event simulatedEvent)
+	public void updateResultsAndTallies(Event simulatedEvent, UpdateId updateId)
 			throws RemoteException;
 
 	public void updateCurrentScores(EventCategories eventType,
-			List<Athlete> currentScores) throws RemoteException;
+			List<Athlete> currentScores, UpdateId updateId)
+			throws RemoteException;
 
 	public Tally getMedalTally(NationCategories teamName, String clientID)
 			throws RemoteException;
 
+	public Map<NationCategories, Tally> getAllTallies(String clientID)
+			throws RemoteException;
+
+	public GamesSnapshot getGamesSnapshot(String clientID)
+			throws RemoteException;
+
+	public Standings getStandings(int topN, String clientID)
+			throws RemoteException;
+
 	public Results getResults(EventCategories eventName, String clientID)
 			throws RemoteException;
 
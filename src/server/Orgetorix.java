@@ -1,38 +1,72 @@
 package server;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
 
+import server.LogRecord.RecordType;
 import util.BullyElectedBerkeleySynchronized;
 import util.RegistryService;
+import util.ServerDetail;
 import util.ServiceComponent;
 import base.Athlete;
 import base.Event;
 import base.EventCategories;
+import base.GamesSnapshot;
 import base.MedalCategories;
 import base.NationCategories;
 import base.OlympicException;
 import base.Results;
+import base.ScoreSample;
+import base.Standings;
 import base.Tally;
+import base.UpdateId;
+import base.Versioned;
 
 /**
  * Encapsulates the backend database process responsible for storage and
  * retrieval of updated scores, results and medal tallies. The database is
- * stored as files on disk.
+ * held by a {@link StorageEngine} chosen with --engine: by default a
+ * {@link LogStructuredStore}, which keeps it in memory and appends every
+ * update to a log on disk.
+ * 
+ * An Orgetorix started with --standby, or while another is registered,
+ * registers as a standby instead. It tails the primary's change feed into its
+ * own in-memory copy of the database, and promotes itself through
+ * {@link ServiceFinder} once the primary has stopped sending heartbeats and
+ * been removed. Replication is asynchronous, so updates the primary applied
+ * just before failing may not have reached the standby. A standby keeps its
+ * database in files of its own, named after the database with a Standby
+ * suffix, and checkpoints it only once promoted, so it never touches the
+ * files of a primary started from the same directory. A database is locked
+ * while open, so a second process given the same name fails to start rather
+ * than sharing it.
+ * 
+ * An Orgetorix started with --shard=i/n holds only shard i of n: the scores
+ * and results of the events, and the tallies of the nations, whose ordinal k
+ * has k % n == i. Each shard is a separate process with its own log, so writes
+ * to different shards do not contend. Its database files are named after the
+ * database and the shard, e.g. OlympicsDBShard0of2, so shards started from
+ * the same directory do not share them, and its checkpoints record the
+ * layout, so a database is never recovered under another. Obelix routes every call to the owning
+ * shard, and a standby backs up the shard it was started with.
+ * 
+ * Every update carries the {@link UpdateId} its producer gave it, so an update
+ * sent again after a timeout or failover is applied exactly once.
+ * 
+ * An Orgetorix may also run inside an Obelix started with --embedded, which
+ * calls it directly, see {@link #startEmbedded(String, int, String, String[])}.
  * 
  * @author aravind
  * 
@@ -41,105 +75,169 @@ public class Orgetorix extends ServiceComponent implements OrgetorixInterface {
 	private static String JAVA_RMI_HOSTNAME_PROPERTY = "java.rmi.server.hostname";
 	private static String FILE_LOCATION = "./";
 	private static String ORGETORIX_SERVICE_NAME = "Orgetorix";
+	private static String STANDBY_SERVICE_NAME = "OrgetorixStandby";
+	private static String STANDBY_OPTION = "--standby";
+	private static String STANDBY_DB_SUFFIX = "Standby";
+	private static String LOCK_FILE_PREFIX = "Lock";
+	private static boolean STANDBY = false;
+	private static int REPLICATION_BATCH_SIZE = 512;
+	private static String SHARD_OPTION = "--shard=";
+	private static String SHARD_DB_SUFFIX = "Shard";
+	private static int SHARD_INDEX = 0;
+	private static int SHARD_COUNT = 1;
+	private static String DEFAULT_DB_NAME = "OlympicsDB";
 	private static String SERVICE_FINDER_HOST;
 	private static int SERVICE_FINDER_PORT;
+	private static String DB_NAME = DEFAULT_DB_NAME;
+	private static StorageConfiguration STORAGE_CONFIGURATION = new StorageConfiguration();
 
 	private static Orgetorix orgetorixServerInstance;
-	private String resultFileName;
-	private String tallyFileName;
-	private String scoreFileName;
 	private String dbName;
+	private FileLock databaseLock;
+	private StorageEngine store;
+	private StandingsTable standingsTable;
+
+	private Registry registry;
+	private OrgetorixInterface serverStub;
+	private volatile boolean standby;
+	private OrgetorixInterface primaryStub;
+	private long replicationOffset = -1;
 
 	public Orgetorix(String serviceFinderHost, int serviceFinderPort) {
 		super(ORGETORIX_SERVICE_NAME, serviceFinderHost, serviceFinderPort);
-		this.dbName = UUID.randomUUID().toString();
-		this.resultFileName = FILE_LOCATION + "Results" + this.dbName;
-		this.tallyFileName = FILE_LOCATION + "Tallies" + this.dbName;
-		this.scoreFileName = FILE_LOCATION + "Scores" + this.dbName;
-		try {
-			this.initializeDatabase();
-		} catch (RemoteException e) {
-			e.printStackTrace();
+		this.dbName = (SHARD_COUNT > 1) ? DB_NAME + SHARD_DB_SUFFIX
+				+ SHARD_INDEX + "of" + SHARD_COUNT : DB_NAME;
+	}
+
+	/**
+	 * Opens the storage engine holding the scores, results and tallies, once
+	 * the role is known. An existing database with the same name is recovered
+	 * from disk, unless the engine keeps nothing there. The medal table is
+	 * ranked once from the recovered tallies and kept up to date from then
+	 * on.
+	 * 
+	 * @throws IOException
+	 *             If the database could not be opened, or is held by another
+	 *             process.
+	 */
+	private void initializeDatabase() throws IOException {
+		lockDatabase();
+		STORAGE_CONFIGURATION.setShard(SHARD_INDEX, SHARD_COUNT);
+		this.store = StorageEngines.open(FILE_LOCATION, this.dbName,
+				STORAGE_CONFIGURATION);
+		this.standingsTable = new StandingsTable();
+		for (NationCategories nation : NationCategories.values()) {
+			updateStanding(nation);
 		}
+	}
 
+	/**
+	 * Takes an exclusive lock on the database's lock file, held until the
+	 * process exits.
+	 * 
+	 * @throws IOException
+	 *             If another process holds the database.
+	 */
+	private void lockDatabase() throws IOException {
+		FileChannel lockChannel = new RandomAccessFile(FILE_LOCATION
+				+ LOCK_FILE_PREFIX + this.dbName, "rw").getChannel();
+		try {
+			this.databaseLock = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			this.databaseLock = null;
+		}
+		if (this.databaseLock == null) {
+			lockChannel.close();
+			throw new IOException("Database " + this.dbName
+					+ " is held by another process.");
+		}
 	}
 
 	/**
-	 * Initializes the database with empty records of scores, results and
-	 * tallies.
+	 * Moves a nation held by this shard to its place in the medal table after
+	 * its tally may have changed.
 	 * 
-	 * @throws RemoteException
+	 * @param nation
 	 */
-	private void initializeDatabase() throws RemoteException {
-		this.writeToDatabase(new HashSet<Event>(), this.resultFileName);
-		Map<NationCategories, Tally> medalTallies = new HashMap<NationCategories, Tally>();
-		for (NationCategories nation : NationCategories.values()) {
-			medalTallies.put(nation, new Tally());
-			//medalTallies.get(nation).setTimestamp(this.getTime());
-			medalTallies.get(nation).setTimestamp(System.currentTimeMillis());
-		}
-		this.writeToDatabase(medalTallies, this.tallyFileName);
-		Map<EventCategories, ArrayList<Athlete>> scores = new HashMap<EventCategories, ArrayList<Athlete>>();
-		for (EventCategories event : EventCategories.values()) {
-			scores.put(event, new ArrayList<Athlete>());
-			for (Athlete athleteScore : scores.get(event)) {
-				//athleteScore.setTimestamp(this.getTime());
-				athleteScore.setTimestamp(System.currentTimeMillis());
-			}
+	private void updateStanding(NationCategories nation) {
+		if (ownsShardKey(nation.ordinal())) {
+			this.standingsTable.update(nation, this.store.getMedalTallyIfNewer(
+					nation, Versioned.NO_VERSION));
 		}
-		this.writeToDatabase(scores, this.scoreFileName);
 	}
 
 	/**
 	 * Updates the results and tallies of a specified event in the database.
 	 * 
 	 * @param simulatedEvent
+	 * @param updateId
 	 * @throws RemoteException
 	 */
 	@Override
-	public void updateResultsAndTallies(Event simulatedEvent)
+	public void updateResultsAndTallies(Event simulatedEvent, UpdateId updateId)
 			throws RemoteException {
-		updateResults(simulatedEvent);
-		updateMedalTallies(simulatedEvent.getResult());
+		updateResults(simulatedEvent, updateId);
+		updateMedalTallies(simulatedEvent.getResult(), updateId);
 	}
 
 	/**
 	 * Updates the results of a specified event in the database.
 	 * 
 	 * @param completedEvent
+	 * @param updateId
 	 * @throws RemoteException
 	 */
-	private void updateResults(Event completedEvent) throws RemoteException {
-		Set<Event> completedEvents = readResultFile();
-		completedEvents.add(completedEvent);
-
-		for (Event event : completedEvents) {
-			//event.getResult().setTimestamp(this.getTime());
-			event.getResult().setTimestamp(System.currentTimeMillis());
+	@Override
+	public void updateResults(Event completedEvent, UpdateId updateId)
+			throws RemoteException {
+		checkPrimary();
+		checkShard(completedEvent.getName().ordinal());
+		try {
+			this.store.updateResults(completedEvent, updateId);
+		} catch (IOException e) {
+			throw new RemoteException("Could not update results.", e);
 		}
-
-		writeToDatabase(completedEvents, this.resultFileName);
 	}
 
 	/**
-	 * Updates the medal tallies in the database at the end of an event.
+	 * Updates the medal tallies in the database at the end of an event. Only
+	 * the winners whose tallies are held by this shard are credited; the
+	 * caller sends the same results to the shards holding the others. Results
+	 * sent again with the same update id are not credited twice.
 	 * 
 	 * @param eventResult
+	 * @param updateId
 	 * @throws RemoteException
 	 */
-	private void updateMedalTallies(Results eventResult) throws RemoteException {
-		Map<NationCategories, Tally> medalTallies = readTallyFile();
+	@Override
+	public void updateMedalTallies(Results eventResult, UpdateId updateId)
+			throws RemoteException {
+		checkPrimary();
+		Results ownedResult = new Results();
+		if (eventResult.getTimestamp() != null) {
+			ownedResult.setTimestamp(eventResult.getTimestamp());
+		}
+		boolean ownsWinner = false;
 		for (MedalCategories medalType : MedalCategories.values()) {
-			medalTallies.get(eventResult.getTeam(medalType)).incrementTally(
-					medalType);
+			NationCategories team = eventResult.getTeam(medalType);
+			if (team != null && ownsShardKey(team.ordinal())) {
+				ownedResult.setTeam(medalType, team);
+				ownsWinner = true;
+			}
 		}
-
-		for (NationCategories nation : medalTallies.keySet()) {
-			//medalTallies.get(nation).setTimestamp(this.getTime());
-			medalTallies.get(nation).setTimestamp(System.currentTimeMillis());
+		if (!ownsWinner) {
+			return;
+		}
+		try {
+			this.store.updateMedalTallies(ownedResult, updateId);
+		} catch (IOException e) {
+			throw new RemoteException("Could not update medal tallies.", e);
+		}
+		for (MedalCategories medalType : MedalCategories.values()) {
+			if (ownedResult.getTeam(medalType) != null) {
+				updateStanding(ownedResult.getTeam(medalType));
+			}
 		}
-
-		writeToDatabase(medalTallies, this.tallyFileName);
 	}
 
 	/**
@@ -147,19 +245,20 @@ public class Orgetorix extends ServiceComponent implements OrgetorixInterface {
 	 * 
 	 * @param eventType
 	 * @param currentScores
+	 * @param updateId
 	 * @throws RemoteException
 	 */
 	@Override
 	public void updateCurrentScores(EventCategories eventType,
-			List<Athlete> currentScores) throws RemoteException {
-		Map<EventCategories, ArrayList<Athlete>> scores = readScoreFile();
-		for (Athlete athleteScore : currentScores) {
-			//athleteScore.setTimestamp(this.getTime());
-			athleteScore.setTimestamp(System.currentTimeMillis());
+			List<Athlete> currentScores, UpdateId updateId)
+			throws RemoteException {
+		checkPrimary();
+		checkShard(eventType.ordinal());
+		try {
+			this.store.updateCurrentScores(eventType, currentScores, updateId);
+		} catch (IOException e) {
+			throw new RemoteException("Could not update scores.", e);
 		}
-		scores.put(eventType, (ArrayList<Athlete>) currentScores);
-
-		writeToDatabase(scores, this.scoreFileName);
 	}
 
 	/**
@@ -172,9 +271,76 @@ public class Orgetorix extends ServiceComponent implements OrgetorixInterface {
 	@Override
 	public Tally getMedalTally(NationCategories teamName)
 			throws RemoteException {
-		Map<NationCategories, Tally> medalTallies = readTallyFile();
-		return medalTallies.get(teamName);
+		return this.store.getMedalTally(teamName);
+	}
+
+	/**
+	 * Retreives the medal tallies of every nation held by this shard in one
+	 * call, each with its version, so the caller can cache them as it would
+	 * tallies read one at a time.
+	 * 
+	 * @return The medal tallies and their versions by nation.
+	 * @throws RemoteException
+	 */
+	@Override
+	public Map<NationCategories, Versioned<Tally>> getAllTallies()
+			throws RemoteException {
+		Map<NationCategories, Versioned<Tally>> medalTallies = new EnumMap<NationCategories, Versioned<Tally>>(
+				NationCategories.class);
+		for (NationCategories nation : NationCategories.values()) {
+			if (ownsShardKey(nation.ordinal())) {
+				medalTallies.put(nation, this.store.getMedalTallyIfNewer(
+						nation, Versioned.NO_VERSION));
+			}
+		}
+		return medalTallies;
+	}
+
+	/**
+	 * Retreives the scores, results and tallies held by this shard in one
+	 * read. See {@link StorageEngine#getGamesSnapshot()}.
+	 * 
+	 * @return GamesSnapshot
+	 * @throws RemoteException
+	 */
+	@Override
+	public GamesSnapshot getGamesSnapshot() throws RemoteException {
+		GamesSnapshot snapshot = this.store.getGamesSnapshot();
+		if (SHARD_COUNT == 1) {
+			return snapshot;
+		}
+		GamesSnapshot shardSnapshot = new GamesSnapshot(
+				snapshot.getTimestamp());
+		for (EventCategories eventName : EventCategories.values()) {
+			if (ownsShardKey(eventName.ordinal())) {
+				shardSnapshot.putScores(eventName,
+						snapshot.getScores(eventName));
+				if (snapshot.getResults(eventName) != null) {
+					shardSnapshot.putResults(eventName,
+							snapshot.getResults(eventName));
+				}
+			}
+		}
+		for (NationCategories nation : NationCategories.values()) {
+			if (ownsShardKey(nation.ordinal())) {
+				shardSnapshot.putMedalTally(nation,
+						snapshot.getMedalTally(nation));
+			}
+		}
+		return shardSnapshot;
+	}
 
+	/**
+	 * Retreives the leading nations of the medal table held by this shard,
+	 * which is kept ranked as medals are credited rather than ranked per call.
+	 * 
+	 * @param topN
+	 * @return The first topN places.
+	 * @throws RemoteException
+	 */
+	@Override
+	public Standings getStandings(int topN) throws RemoteException {
+		return this.standingsTable.getStandings(topN);
 	}
 
 	/**
@@ -186,13 +352,7 @@ public class Orgetorix extends ServiceComponent implements OrgetorixInterface {
 	 */
 	@Override
 	public Results getResults(EventCategories eventName) throws RemoteException {
-		Set<Event> completedEvents = readResultFile();
-		for (Event event : completedEvents) {
-			if (event.getName() == eventName) {
-				return event.getResult();
-			}
-		}
-		return null;
+		return this.store.getResults(eventName);
 	}
 
 	/**
@@ -205,74 +365,284 @@ public class Orgetorix extends ServiceComponent implements OrgetorixInterface {
 	@Override
 	public List<Athlete> getCurrentScores(EventCategories eventName)
 			throws RemoteException {
-		Map<EventCategories, ArrayList<Athlete>> scores = readScoreFile();
-		return scores.get(eventName);
+		return this.store.getCurrentScores(eventName);
 	}
 
 	/**
-	 * Utility function to read the result file.
+	 * Retreives the scores of an event recorded between two times, inclusive,
+	 * read sequentially from its history file.
+	 * 
+	 * @param eventName
+	 * @param fromTimestamp
+	 * @param toTimestamp
+	 * @return The samples in the range, oldest first.
+	 * @throws RemoteException
 	 */
-	private Set<Event> readResultFile() {
-		Set<Event> completedEvents = (Set<Event>) readFromDatabase(this.resultFileName);
-		return completedEvents;
+	@Override
+	public List<ScoreSample> getScoreHistory(EventCategories eventName,
+			long fromTimestamp, long toTimestamp) throws RemoteException {
+		try {
+			return this.store.getScoreHistory(eventName, fromTimestamp,
+					toTimestamp);
+		} catch (IOException e) {
+			throw new RemoteException("Could not read score history.", e);
+		}
 	}
 
 	/**
-	 * Utility function to read the medal tally file.
+	 * Returns the changes applied to the database from offset onwards, for a
+	 * standby to replicate or an Obelix to update its caches from. A sharded
+	 * server returns only the changes to the events and nations it holds.
+	 * 
+	 * @param offset
+	 *            The offset after the last change the standby applied, or -1
+	 *            to receive the whole state.
+	 * @param maxChanges
+	 * @return ChangeBatch
+	 * @throws RemoteException
 	 */
-	private Map<NationCategories, Tally> readTallyFile() {
-		Map<NationCategories, Tally> medalTallies = (Map<NationCategories, Tally>) readFromDatabase(this.tallyFileName);
-		return medalTallies;
+	@Override
+	public ChangeBatch getChangesSince(long offset, int maxChanges)
+			throws RemoteException {
+		ChangeBatch batch = this.store.getChangesSince(offset, maxChanges);
+		if (SHARD_COUNT == 1) {
+			return batch;
+		}
+		List<Change> shardChanges = new ArrayList<Change>();
+		for (Change change : batch.getChanges()) {
+			int shardKey = (change.getType() == RecordType.TALLIES) ? change
+					.getNation().ordinal() : change.getEventName().ordinal();
+			if (ownsShardKey(shardKey)) {
+				shardChanges.add(change);
+			}
+		}
+		ChangeBatch shardBatch = new ChangeBatch(shardChanges,
+				batch.getNextOffset(), batch.isResync());
+		shardBatch.setTallySequences(batch.getTallySequences());
+		return shardBatch;
+	}
+
+	private void checkPrimary() throws RemoteException {
+		if (this.standby) {
+			throw new RemoteException("Standby does not accept updates.");
+		}
+	}
+
+	private static boolean ownsShardKey(int shardKey) {
+		return shardKey % SHARD_COUNT == SHARD_INDEX;
 	}
 
 	/**
-	 * Utility function to read the score file.
+	 * Rejects an update for an event stored on another shard, so a caller
+	 * routing with an outdated shard map does not scatter the event's data.
+	 * 
+	 * @param shardKey
+	 * @throws RemoteException
 	 */
-	private Map<EventCategories, ArrayList<Athlete>> readScoreFile() {
-		Map<EventCategories, ArrayList<Athlete>> scores = (Map<EventCategories, ArrayList<Athlete>>) readFromDatabase(this.scoreFileName);
-		return scores;
+	private void checkShard(int shardKey) throws RemoteException {
+		if (!ownsShardKey(shardKey)) {
+			throw new RemoteException("Key " + shardKey
+					+ " is not stored on shard " + SHARD_INDEX + "/"
+					+ SHARD_COUNT + ".");
+		}
 	}
 
 	/**
-	 * Utility function to serialize an object to a file (database).
+	 * @return The primary holding this server's shard, or null if none is
+	 *         registered.
+	 * @throws RemoteException
+	 */
+	private ServerDetail getPrimaryDetail() throws RemoteException {
+		return this.getShardServerDetails(ORGETORIX_SERVICE_NAME, SHARD_INDEX);
+	}
+
+	/**
+	 * Pulls the next batch of changes from the primary and applies them.
 	 * 
-	 * @param object
-	 * @param filename
+	 * @return The number of changes applied.
+	 * @throws RemoteException
+	 *             If no primary could be reached.
 	 */
-	private synchronized void writeToDatabase(Object object, String filename) {
+	public int replicate() throws RemoteException {
 		try {
-			FileOutputStream fileOut = new FileOutputStream(filename);
-			ObjectOutputStream out = new ObjectOutputStream(fileOut);
-			out.writeObject(object);
-			out.flush();
-			out.close();
-			fileOut.close();
-		} catch (IOException i) {
-			i.printStackTrace();
+			if (this.primaryStub == null) {
+				this.primaryStub = lookupPrimary();
+			}
+			ChangeBatch batch = this.primaryStub.getChangesSince(
+					this.replicationOffset, REPLICATION_BATCH_SIZE);
+			if (batch.isResync()) {
+				System.err.println("Resynchronizing with primary.");
+				this.store.setTallySequences(batch.getTallySequences());
+			}
+			for (Change change : batch.getChanges()) {
+				this.store.applyChange(change);
+				if (change.getType() == RecordType.TALLIES) {
+					updateStanding(change.getNation());
+				}
+			}
+			this.replicationOffset = batch.getNextOffset();
+			return batch.getChanges().size();
+		} catch (RemoteException e) {
+			this.primaryStub = null;
+			throw e;
+		} catch (IOException e) {
+			throw new RemoteException("Could not apply replicated changes.", e);
+		}
+	}
+
+	private OrgetorixInterface lookupPrimary() throws RemoteException {
+		ServerDetail primaryDetail = getPrimaryDetail();
+		if (primaryDetail == null) {
+			throw new RemoteException("No primary registered.");
+		}
+		try {
+			return (OrgetorixInterface) LocateRegistry.getRegistry(
+					primaryDetail.getServiceAddress(),
+					primaryDetail.getServicePort()).lookup(
+					primaryDetail.getServerName());
+		} catch (NotBoundException e) {
+			throw new RemoteException("Primary not bound.", e);
 		}
 	}
 
 	/**
-	 * Utility function to deserialize an object from a file.
+	 * Promotes this standby to primary, provided {@link ServiceFinder} no
+	 * longer lists one for its shard. The replicated state is checkpointed first, so it is
+	 * durable before the first update is accepted.
 	 * 
-	 * @param filename
-	 * @return
+	 * @return true if this server is now the primary.
+	 * @throws RemoteException
 	 */
-	private synchronized Object readFromDatabase(String filename) {
-		Object object = null;
+	public boolean takeOverAsPrimary() throws RemoteException {
+		if (getPrimaryDetail() != null) {
+			return false;
+		}
 		try {
-			FileInputStream fileIn = new FileInputStream(filename);
-			ObjectInputStream in = new ObjectInputStream(fileIn);
-			object = in.readObject();
-			in.close();
-			fileIn.close();
-		} catch (IOException i) {
-			i.printStackTrace();
-		} catch (ClassNotFoundException c) {
-			System.out.println("Class not found");
-			c.printStackTrace();
+			this.store.checkpoint();
+		} catch (IOException e) {
+			throw new RemoteException("Could not checkpoint replica.", e);
+		}
+		String primaryName = ORGETORIX_SERVICE_NAME + this.PID;
+		this.registry.rebind(primaryName, this.serverStub);
+		if (!this.promote(ORGETORIX_SERVICE_NAME)) {
+			try {
+				this.registry.unbind(primaryName);
+			} catch (NotBoundException e) {
+				e.printStackTrace();
+			}
+			return false;
 		}
-		return object;
+		this.serviceName = ORGETORIX_SERVICE_NAME;
+		this.standby = false;
+		this.setupCheckpointThread();
+		System.err.println("Promoted to primary.");
+		return true;
+	}
+
+	public boolean isStandby() {
+		return this.standby;
+	}
+
+	/**
+	 * Retreives the medal tally for a team unless the caller already holds its
+	 * current version.
+	 * 
+	 * @param teamName
+	 * @param version
+	 *            The version held by the caller, or Versioned.NO_VERSION.
+	 * @return The medal tally and its version, or only the version if it is
+	 *         unchanged.
+	 * @throws RemoteException
+	 */
+	@Override
+	public Versioned<Tally> getMedalTallyIfNewer(NationCategories teamName,
+			long version) throws RemoteException {
+		return this.store.getMedalTallyIfNewer(teamName, version);
+	}
+
+	/**
+	 * Retreives the results for an event unless the caller already holds
+	 * their current version.
+	 * 
+	 * @param eventName
+	 * @param version
+	 *            The version held by the caller, or Versioned.NO_VERSION.
+	 * @return The results and their version, or only the version if they are
+	 *         unchanged.
+	 * @throws RemoteException
+	 */
+	@Override
+	public Versioned<Results> getResultsIfNewer(EventCategories eventName,
+			long version) throws RemoteException {
+		return this.store.getResultsIfNewer(eventName, version);
+	}
+
+	/**
+	 * Retreives the latest scores for an event unless the caller already
+	 * holds their current version.
+	 * 
+	 * @param eventName
+	 * @param version
+	 *            The version held by the caller, or Versioned.NO_VERSION.
+	 * @return The scores and their version, or only the version if they are
+	 *         unchanged.
+	 * @throws RemoteException
+	 */
+	@Override
+	public Versioned<List<Athlete>> getCurrentScoresIfNewer(
+			EventCategories eventName, long version) throws RemoteException {
+		return this.store.getCurrentScoresIfNewer(eventName, version);
+	}
+
+	/**
+	 * Takes a checkpoint of the database, truncating the update log, and
+	 * reports the group commit and write-behind counters.
+	 */
+	public void checkpoint() {
+		try {
+			this.store.checkpoint();
+			System.err.println("Checkpoint taken.\n"
+					+ this.store.getStatistics());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts as a standby if asked to, or if another Orgetorix is already
+	 * registered as the primary of the same shard. A standby's database is
+	 * kept apart from the primary's.
+	 * 
+	 * @throws RemoteException
+	 */
+	private void setupRole() throws RemoteException {
+		this.standby = STANDBY || getPrimaryDetail() != null;
+		if (this.standby) {
+			this.serviceName = STANDBY_SERVICE_NAME;
+			this.dbName = this.dbName + STANDBY_DB_SUFFIX;
+			System.err.println("Starting as standby.");
+		}
+	}
+
+	private void setupHeartbeatThread() {
+		Thread heartbeatThread = new Thread(new HeartbeatNotifier(this),
+				"HeartbeatThread");
+		heartbeatThread.setDaemon(true);
+		heartbeatThread.start();
+	}
+
+	private void setupReplicationThread() {
+		Thread replicationThread = new Thread(new ReplicationFollower(this),
+				"ReplicationThread");
+		replicationThread.setDaemon(true);
+		replicationThread.start();
+	}
+
+	private void setupCheckpointThread() {
+		Thread checkpointThread = new Thread(new Checkpointer(this),
+				"CheckpointThread");
+		checkpointThread.setDaemon(true);
+		checkpointThread.start();
 	}
 
 	private static Orgetorix getOrgetorixInstance() {
@@ -298,10 +668,9 @@ public class Orgetorix extends ServiceComponent implements OrgetorixInterface {
 			throws IOException, OlympicException {
 		Registry registry = null;
 
-		this.register(ORGETORIX_SERVICE_NAME, regService.getLocalIPAddress(),
-				JAVA_RMI_PORT);
 		OrgetorixInterface serverStub = (OrgetorixInterface) UnicastRemoteObject
 				.exportObject(Orgetorix.getOrgetorixInstance(), 0);
+		this.serverStub = serverStub;
 		try {
 			registry = LocateRegistry.getRegistry(JAVA_RMI_PORT);
 			registry.rebind(this.getServerName(), serverStub);
@@ -316,9 +685,14 @@ public class Orgetorix extends ServiceComponent implements OrgetorixInterface {
 			System.err
 					.println("New Registry Service created. Orgetorix ready.");
 		}
+		this.registry = registry;
+		// Registered only once bound, so it is never looked up before then.
+		this.register(this.serviceName, regService.getLocalIPAddress(),
+				JAVA_RMI_PORT, SHARD_INDEX, SHARD_COUNT);
 	}
 
-	public static void main(String[] args) throws OlympicException {
+	public static void main(String[] options) throws OlympicException {
+		String[] args = parseStorageOptions(options);
 		if (args.length < 1) {
 			usage();
 			System.exit(-1);
@@ -330,23 +704,196 @@ public class Orgetorix extends ServiceComponent implements OrgetorixInterface {
 				: Integer.parseInt(args[1]);
 		JAVA_RMI_PORT = (args.length < 3) ? DEFAULT_JAVA_RMI_PORT : Integer
 				.parseInt(args[2]);
+		DB_NAME = (args.length < 4) ? DEFAULT_DB_NAME : args[3];
+		Orgetorix.getOrgetorixInstance().start();
+	}
+
+	/**
+	 * Starts an Orgetorix inside the JVM of another server, such as an Obelix
+	 * started with --embedded, which then calls the returned instance directly
+	 * instead of through RMI. It is still exported and registered with
+	 * {@link ServiceFinder}, so other servers reach it as they would any
+	 * other Orgetorix. The RMI port is the one the hosting server uses.
+	 * 
+	 * @param serviceFinderHost
+	 * @param serviceFinderPort
+	 * @param dbName
+	 *            The name of the database, or null for the default.
+	 * @param options
+	 *            Orgetorix options, such as --shard or --engine.
+	 * @return The running Orgetorix.
+	 * @throws OlympicException
+	 */
+	public static Orgetorix startEmbedded(String serviceFinderHost,
+			int serviceFinderPort, String dbName, String[] options)
+			throws OlympicException {
+		if (parseStorageOptions(options).length > 0) {
+			usage();
+			throw new OlympicException("Unknown Orgetorix options.");
+		}
+		SERVICE_FINDER_HOST = serviceFinderHost;
+		SERVICE_FINDER_PORT = serviceFinderPort;
+		DB_NAME = (dbName == null) ? DEFAULT_DB_NAME : dbName;
 		Orgetorix orgetorixInstance = Orgetorix.getOrgetorixInstance();
+		orgetorixInstance.start();
+		return orgetorixInstance;
+	}
 
+	/**
+	 * Opens the database for the role found, then serves it. Only a primary
+	 * checkpoints; a standby starts to once promoted.
+	 * 
+	 * @throws OlympicException
+	 */
+	private void start() throws OlympicException {
 		try {
 			RegistryService regService = new RegistryService();
 			System.setProperty(JAVA_RMI_HOSTNAME_PROPERTY,
 					regService.getLocalIPAddress());
-			orgetorixInstance.setupOrgetorixServer(regService);
-			//orgetorixInstance.initiateElection();
+			this.setupRole();
+			try {
+				this.initializeDatabase();
+			} catch (IOException e) {
+				throw new OlympicException("Could not open database.", e);
+			}
+			this.setupOrgetorixServer(regService);
+			this.setupHeartbeatThread();
+			if (this.isStandby()) {
+				this.setupReplicationThread();
+			} else {
+				this.setupCheckpointThread();
+			}
+			//this.initiateElection();
 		} catch (IOException e) {
 			throw new OlympicException(
 					"Registry Service could not be created.", e);
 		}
 	}
 
+	/**
+	 * Applies the storage options among the command line arguments to the
+	 * storage configuration.
+	 * 
+	 * @param options
+	 * @return The remaining positional arguments.
+	 */
+	private static String[] parseStorageOptions(String[] options) {
+		List<String> args = new ArrayList<String>();
+		for (String option : options) {
+			if (option.equals(STANDBY_OPTION)) {
+				STANDBY = true;
+			} else if (option.startsWith(SHARD_OPTION)) {
+				parseShard(option.substring(SHARD_OPTION.length()));
+			} else if (StorageConfiguration.isOption(option)) {
+				try {
+					STORAGE_CONFIGURATION.parseOption(option);
+				} catch (IllegalArgumentException e) {
+					System.out.println(e.getMessage());
+					usage();
+					System.exit(-1);
+				}
+			} else {
+				args.add(option);
+			}
+		}
+		return args.toArray(new String[args.size()]);
+	}
+
+	/**
+	 * Parses the shard held by this server, given as index/count.
+	 * 
+	 * @param shard
+	 */
+	private static void parseShard(String shard) {
+		String[] parts = shard.split("/");
+		try {
+			SHARD_INDEX = Integer.parseInt(parts[0]);
+			SHARD_COUNT = Integer.parseInt(parts[1]);
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			SHARD_COUNT = 0;
+		}
+		if (SHARD_COUNT < 1 || SHARD_INDEX < 0 || SHARD_INDEX >= SHARD_COUNT) {
+			System.out.println("Invalid shard " + shard + ".");
+			usage();
+			System.exit(-1);
+		}
+	}
+
 	private static void usage() {
 		System.out.println("java -cp ./bin/ -Djava.rmi.server.codebase=file:./bin/"
 				+ " server.Orgetorix <insert host address displayed by ServiceFinder>"
-				+ " <insert port number displayed by ServiceFinder> [RMI_PORT]");
+				+ " <insert port number displayed by ServiceFinder> [RMI_PORT] [DB_NAME] ["
+				+ STANDBY_OPTION + "] [" + SHARD_OPTION + "INDEX/COUNT] "
+				+ StorageConfiguration.usage());
+	}
+}
+
+/**
+ * Periodically checkpoints the Orgetorix database so that the update log, and
+ * hence the time taken to recover on restart, stays bounded.
+ * 
+ * @author aravind
+ * 
+ */
+class Checkpointer implements Runnable {
+
+	private Orgetorix orgetorixInstance;
+	private static int CHECKPOINT_PERIOD = 30000;
+
+	public Checkpointer(Orgetorix orgetorixInstance) {
+		this.orgetorixInstance = orgetorixInstance;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				Thread.sleep(CHECKPOINT_PERIOD);
+				orgetorixInstance.checkpoint();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
+
+/**
+ * Keeps a standby Orgetorix up to date with the primary, and promotes it once
+ * the primary can no longer be reached and {@link ServiceFinder} has removed
+ * it. As a primary is removed at most HOLD_TIME plus one rebalancing interval
+ * after its last heartbeat, the standby takes over within about five seconds.
+ * 
+ * @author aravind
+ * 
+ */
+class ReplicationFollower implements Runnable {
+
+	private Orgetorix orgetorixInstance;
+	private static int POLL_INTERVAL = 100;
+
+	public ReplicationFollower(Orgetorix orgetorixInstance) {
+		this.orgetorixInstance = orgetorixInstance;
+	}
+
+	@Override
+	public void run() {
+		while (orgetorixInstance.isStandby()) {
+			try {
+				if (orgetorixInstance.replicate() > 0) {
+					continue;
+				}
+			} catch (RemoteException e) {
+				try {
+					orgetorixInstance.takeOverAsPrimary();
+				} catch (RemoteException e1) {
+					e1.printStackTrace();
+				}
+			}
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 }
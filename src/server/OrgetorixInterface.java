@@ -3,27 +3,62 @@ package server;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Map;
 
 import base.Athlete;
 import base.Event;
 import base.EventCategories;
+import base.GamesSnapshot;
 import base.NationCategories;
 import base.Results;
+import base.ScoreSample;
+import base.Standings;
 import base.Tally;
+import base.UpdateId;
+import base.Versioned;
 
 public interface OrgetorixInterface extends Remote {
-	public void updateResultsAndTallies(Event simulatedEvent)
+	public void updateResultsAndTallies(Event simulatedEvent, UpdateId updateId)
+			throws RemoteException;
+
+	public void updateResults(Event completedEvent, UpdateId updateId)
+			throws RemoteException;
+
+	public void updateMedalTallies(Results eventResult, UpdateId updateId)
 			throws RemoteException;
 
 	public void updateCurrentScores(EventCategories eventType,
-			List<Athlete> currentScores) throws RemoteException;
+			List<Athlete> currentScores, UpdateId updateId)
+			throws RemoteException;
 
 	public Tally getMedalTally(NationCategories teamName)
 			throws RemoteException;
 
+	public Map<NationCategories, Versioned<Tally>> getAllTallies()
+			throws RemoteException;
+
+	public GamesSnapshot getGamesSnapshot() throws RemoteException;
+
+	public Standings getStandings(int topN) throws RemoteException;
+
 	public Results getResults(EventCategories eventName) throws RemoteException;
 
 	public List<Athlete> getCurrentScores(EventCategories eventName)
 			throws RemoteException;
 
+	public List<ScoreSample> getScoreHistory(EventCategories eventName,
+			long fromTimestamp, long toTimestamp) throws RemoteException;
+
+	public ChangeBatch getChangesSince(long offset, int maxChanges)
+			throws RemoteException;
+
+	public Versioned<Tally> getMedalTallyIfNewer(NationCategories teamName,
+			long version) throws RemoteException;
+
+	public Versioned<Results> getResultsIfNewer(EventCategories eventName,
+			long version) throws RemoteException;
+
+	public Versioned<List<Athlete>> getCurrentScoresIfNewer(
+			EventCategories eventName, long version) throws RemoteException;
+
 }
@@ -0,0 +1,165 @@
+package server;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import util.ServerDetail;
+import util.ServiceComponent;
+import base.EventCategories;
+import base.NationCategories;
+
+/**
+ * Maps every shard key, the ordinal of an event or a nation, to the stub of
+ * the Orgetorix holding it. The map is built from the servers listed by
+ * {@link ServiceFinder} and rebuilt by the caller whenever a shard cannot be
+ * reached, such as after a standby has been promoted in place of its primary.
+ *
+ * An Orgetorix running in the same JVM, see
+ * {@link Orgetorix#startEmbedded(String, int, String, String[])}, is mapped to
+ * the instance itself rather than to its stub, so calls to it skip RMI and
+ * serialization. Neither side modifies the objects passed or returned once
+ * published, so sharing them instead of copying is safe.
+ *
+ * @author aravind
+ *
+ */
+public class OrgetorixRouter {
+	private static String ORGETORIX_SERVICE_NAME = "Orgetorix";
+	private static int KEY_COUNT = Math.max(EventCategories.values().length,
+			NationCategories.values().length);
+
+	private ServiceComponent serviceComponent;
+	private volatile OrgetorixInterface[] shardStubs;
+	private volatile Orgetorix embeddedOrgetorix;
+
+	public OrgetorixRouter(ServiceComponent serviceComponent) {
+		this.serviceComponent = serviceComponent;
+		this.shardStubs = new OrgetorixInterface[KEY_COUNT];
+	}
+
+	/**
+	 * Routes the keys held by an Orgetorix in the same JVM to it directly,
+	 * from the next refresh on.
+	 *
+	 * @param embeddedOrgetorix
+	 */
+	public void setEmbedded(Orgetorix embeddedOrgetorix) {
+		this.embeddedOrgetorix = embeddedOrgetorix;
+	}
+
+	/**
+	 * @param shardStub
+	 * @return true if the stub is the Orgetorix in the same JVM, whose errors
+	 *         are raised by Orgetorix itself rather than by the network.
+	 */
+	public boolean isEmbedded(OrgetorixInterface shardStub) {
+		return shardStub != null && shardStub == this.embeddedOrgetorix;
+	}
+
+	public static int shardKey(EventCategories eventName) {
+		return eventName.ordinal();
+	}
+
+	public static int shardKey(NationCategories nation) {
+		return nation.ordinal();
+	}
+
+	/**
+	 * @param shardKey
+	 * @return The stub of the Orgetorix holding the key.
+	 * @throws RemoteException
+	 *             If no reachable Orgetorix holds the key.
+	 */
+	public OrgetorixInterface getShard(int shardKey) throws RemoteException {
+		OrgetorixInterface shardStub = this.shardStubs[shardKey];
+		if (shardStub == null) {
+			refresh();
+			shardStub = this.shardStubs[shardKey];
+			if (shardStub == null) {
+				throw new RemoteException("No Orgetorix holds key " + shardKey
+						+ ".");
+			}
+		}
+		return shardStub;
+	}
+
+	/**
+	 * @return One key held by each shard, so a call made for every key
+	 *         returned reaches each shard exactly once.
+	 * @throws RemoteException
+	 *             If some key is not held by any reachable Orgetorix.
+	 */
+	public List<Integer> getShardKeys() throws RemoteException {
+		List<Integer> shardKeys = new ArrayList<Integer>();
+		Set<OrgetorixInterface> shards = new HashSet<OrgetorixInterface>();
+		for (int shardKey = 0; shardKey < KEY_COUNT; shardKey++) {
+			if (shards.add(getShard(shardKey))) {
+				shardKeys.add(shardKey);
+			}
+		}
+		return shardKeys;
+	}
+
+	/**
+	 * Forgets every mapping, so the next call for any key rebuilds the map.
+	 */
+	public void invalidate() {
+		this.shardStubs = new OrgetorixInterface[KEY_COUNT];
+	}
+
+	/**
+	 * Rebuilds the map from the servers currently registered, looking up each
+	 * server once. Keys whose server cannot be looked up are left unmapped.
+	 *
+	 * @throws RemoteException
+	 */
+	public synchronized void refresh() throws RemoteException {
+		List<ServerDetail> shardDetails = this.serviceComponent
+				.getServersDetails(ORGETORIX_SERVICE_NAME);
+		Map<String, OrgetorixInterface> stubs = new HashMap<String, OrgetorixInterface>();
+		OrgetorixInterface[] newShardStubs = new OrgetorixInterface[KEY_COUNT];
+		for (int shardKey = 0; shardKey < KEY_COUNT; shardKey++) {
+			for (ServerDetail shardDetail : shardDetails) {
+				if (!shardDetail.ownsShardKey(shardKey)) {
+					continue;
+				}
+				String serverName = shardDetail.getServerName();
+				if (!stubs.containsKey(serverName)) {
+					stubs.put(serverName,
+							isEmbedded(serverName) ? this.embeddedOrgetorix
+									: lookup(shardDetail));
+				}
+				newShardStubs[shardKey] = stubs.get(serverName);
+				if (newShardStubs[shardKey] != null) {
+					break;
+				}
+			}
+		}
+		this.shardStubs = newShardStubs;
+	}
+
+	private boolean isEmbedded(String serverName) {
+		return this.embeddedOrgetorix != null
+				&& this.embeddedOrgetorix.getServerName().equals(serverName);
+	}
+
+	private OrgetorixInterface lookup(ServerDetail shardDetail) {
+		try {
+			return (OrgetorixInterface) LocateRegistry.getRegistry(
+					shardDetail.getServiceAddress(),
+					shardDetail.getServicePort()).lookup(
+					shardDetail.getServerName());
+		} catch (RemoteException | NotBoundException e) {
+			System.err.println("Could not look up "
+					+ shardDetail.getServerName() + ".");
+			return null;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import base.UpdateId;
+
+/**
+ * Remembers which updates of each producer have been applied, so that an
+ * update sent again, for instance after a timeout or a failover, is applied
+ * only once.
+ *
+ * A producer may have many updates in flight, which can arrive out of order.
+ * For each producer the sequence numbers applied among the last WINDOW below
+ * its highest are kept in a ring, indexed by sequence modulo WINDOW. An update
+ * further behind than that is taken to have been applied already, so a
+ * producer must not have WINDOW or more updates in flight at once.
+ *
+ * @author aravind
+ *
+ */
+public class ProducerSequences implements Serializable {
+	private static final long serialVersionUID = 4416090874851633629L;
+	private static int WINDOW = 1024;
+
+	private HashMap<String, long[]> appliedSequences;
+	private HashMap<String, Long> highestSequences;
+
+	public ProducerSequences() {
+		this.appliedSequences = new HashMap<String, long[]>();
+		this.highestSequences = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Records an update as applied.
+	 *
+	 * @param updateId
+	 * @return true if the update had not been applied before and should be
+	 *         applied now, false if it is a duplicate.
+	 */
+	public synchronized boolean claim(UpdateId updateId) {
+		String producerId = updateId.getProducerId();
+		long sequence = updateId.getSequence();
+		long[] applied = this.appliedSequences.get(producerId);
+		if (applied == null) {
+			applied = new long[WINDOW];
+			this.appliedSequences.put(producerId, applied);
+			this.highestSequences.put(producerId, 0L);
+		}
+		long highestSequence = this.highestSequences.get(producerId);
+		int slot = (int) (sequence % WINDOW);
+		if (sequence <= highestSequence - WINDOW || applied[slot] == sequence) {
+			return false;
+		}
+		applied[slot] = sequence;
+		if (sequence > highestSequence) {
+			this.highestSequences.put(producerId, sequence);
+		}
+		return true;
+	}
+
+	public synchronized Set<String> getProducerIds() {
+		return new HashSet<String>(this.appliedSequences.keySet());
+	}
+
+	/**
+	 * @param producerId
+	 * @return The sequence numbers of the producer still held in its window.
+	 */
+	public synchronized List<Long> getAppliedSequences(String producerId) {
+		List<Long> sequences = new ArrayList<Long>();
+		long[] applied = this.appliedSequences.get(producerId);
+		long highestSequence = this.highestSequences.get(producerId);
+		for (long sequence : applied) {
+			if (sequence > 0 && sequence > highestSequence - WINDOW) {
+				sequences.add(sequence);
+			}
+		}
+		return sequences;
+	}
+
+	public synchronized ProducerSequences copy() {
+		ProducerSequences copy = new ProducerSequences();
+		for (String producerId : this.appliedSequences.keySet()) {
+			copy.appliedSequences.put(producerId,
+					this.appliedSequences.get(producerId).clone());
+			copy.highestSequences.put(producerId,
+					this.highestSequences.get(producerId));
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,488 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import base.Athlete;
+import base.EventCategories;
+import base.MedalCategories;
+import base.NationCategories;
+import base.Printable;
+import base.Results;
+import base.Tally;
+import base.UpdateId;
+import server.LogRecord.RecordType;
+
+/**
+ * Compact, versioned binary format used by Orgetorix for its log records and
+ * snapshots, in place of Java serialization. No class descriptors are written:
+ * enums are stored as their ordinals, counts as plain integers and athlete
+ * names that are UUIDs as two longs rather than 36 characters.
+ *
+ * Every encoded log record and snapshot starts with a format version byte so
+ * that the layout can evolve; version 1 is still read. Since version 2 a log
+ * record carries the id of the update it came from, and a snapshot ends with
+ * the updates already credited in the tallies. Since version 3 a snapshot
+ * also holds the last scores applied from each producer, by event, and the
+ * number of tally updates logged. Since version 4 a snapshot starts, after
+ * the version byte, with the index and count of the shard it belongs to,
+ * snapshots of older versions belonging to shard 0 of 1. Within a record an athlete is written as a flags
+ * byte (UUID name, timestamp present), the name, the nationality and event
+ * ordinals, the score and the timestamp if present. Results are written as the
+ * winning nation's ordinal for each medal (or -1), and tallies as the count for
+ * each medal, each followed by the timestamp.
+ *
+ * @author aravind
+ *
+ */
+public class RecordCodec {
+	private static byte FORMAT_VERSION = 4;
+	private static byte FIRST_FORMAT_VERSION = 1;
+	private static byte UPDATE_ID_FORMAT_VERSION = 2;
+	private static byte SCORE_SEQUENCE_FORMAT_VERSION = 3;
+	private static byte SHARD_FORMAT_VERSION = 4;
+
+	private static int UUID_NAME = 0x1;
+	private static int HAS_TIMESTAMP = 0x2;
+	private static byte NO_WINNER = -1;
+
+	private RecordCodec() {
+	}
+
+	/**
+	 * Encodes a log record.
+	 *
+	 * @param record
+	 * @return byte[]
+	 * @throws IOException
+	 */
+	public static byte[] encode(LogRecord record) throws IOException {
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytesOut);
+		out.writeByte(FORMAT_VERSION);
+		out.writeByte(record.getType().ordinal());
+		writeUpdateId(out, record.getUpdateId());
+		switch (record.getType()) {
+		case SCORES:
+			out.writeByte(record.getEventName().ordinal());
+			writeScores(out, record.getScores());
+			break;
+		case RESULTS:
+			out.writeByte(record.getEventName().ordinal());
+			writeResults(out, record.getEventResult());
+			break;
+		case TALLIES:
+			writeResults(out, record.getEventResult());
+			break;
+		}
+		out.close();
+		return bytesOut.toByteArray();
+	}
+
+	/**
+	 * Decodes a log record.
+	 *
+	 * @param encodedRecord
+	 * @return LogRecord
+	 * @throws IOException
+	 */
+	public static LogRecord decodeRecord(byte[] encodedRecord)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				encodedRecord));
+		int version = checkVersion(in);
+		RecordType type = RecordType.values()[in.readUnsignedByte()];
+		UpdateId updateId = (version >= UPDATE_ID_FORMAT_VERSION) ? readUpdateId(in)
+				: null;
+		switch (type) {
+		case SCORES:
+			EventCategories eventName = readEvent(in);
+			return LogRecord.scoreUpdate(eventName, readScores(in))
+					.withUpdateId(updateId);
+		case RESULTS:
+			return LogRecord.resultUpdate(readEvent(in), readResults(in))
+					.withUpdateId(updateId);
+		default:
+			return LogRecord.tallyUpdate(readResults(in)).withUpdateId(
+					updateId);
+		}
+	}
+
+	/**
+	 * Encodes a snapshot of the database.
+	 *
+	 * @param snapshot
+	 * @return byte[]
+	 * @throws IOException
+	 */
+	public static byte[] encode(DatabaseSnapshot snapshot) throws IOException {
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytesOut);
+		out.writeByte(FORMAT_VERSION);
+		out.writeInt(snapshot.getShardIndex());
+		out.writeInt(snapshot.getShardCount());
+
+		out.writeInt(snapshot.getScores().size());
+		for (Map.Entry<EventCategories, List<Athlete>> eventScores : snapshot
+				.getScores().entrySet()) {
+			out.writeByte(eventScores.getKey().ordinal());
+			writeScores(out, eventScores.getValue());
+		}
+
+		out.writeInt(snapshot.getResults().size());
+		for (Map.Entry<EventCategories, Results> eventResult : snapshot
+				.getResults().entrySet()) {
+			out.writeByte(eventResult.getKey().ordinal());
+			writeResults(out, eventResult.getValue());
+		}
+
+		out.writeInt(snapshot.getMedalTallies().size());
+		for (Map.Entry<NationCategories, Tally> medalTally : snapshot
+				.getMedalTallies().entrySet()) {
+			out.writeByte(medalTally.getKey().ordinal());
+			writeTally(out, medalTally.getValue());
+		}
+
+		out.writeInt(snapshot.getFirstSegments().size());
+		for (Map.Entry<String, Integer> firstSegment : snapshot
+				.getFirstSegments().entrySet()) {
+			out.writeUTF(firstSegment.getKey());
+			out.writeInt(firstSegment.getValue());
+		}
+
+		ProducerSequences tallySequences = snapshot.getTallySequences();
+		Set<String> producerIds = tallySequences.getProducerIds();
+		out.writeInt(producerIds.size());
+		for (String producerId : producerIds) {
+			List<Long> sequences = tallySequences
+					.getAppliedSequences(producerId);
+			out.writeUTF(producerId);
+			out.writeInt(sequences.size());
+			for (long sequence : sequences) {
+				out.writeLong(sequence);
+			}
+		}
+
+		out.writeInt(snapshot.getScoreSequences().size());
+		for (Map.Entry<EventCategories, Map<String, Long>> eventSequences : snapshot
+				.getScoreSequences().entrySet()) {
+			out.writeByte(eventSequences.getKey().ordinal());
+			out.writeInt(eventSequences.getValue().size());
+			for (Map.Entry<String, Long> lastSequence : eventSequences
+					.getValue().entrySet()) {
+				out.writeUTF(lastSequence.getKey());
+				out.writeLong(lastSequence.getValue());
+			}
+		}
+		out.writeLong(snapshot.getTallyUpdates());
+		out.close();
+		return bytesOut.toByteArray();
+	}
+
+	/**
+	 * Decodes a snapshot of the database.
+	 *
+	 * @param encodedSnapshot
+	 * @return DatabaseSnapshot
+	 * @throws IOException
+	 */
+	public static DatabaseSnapshot decodeSnapshot(byte[] encodedSnapshot)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				encodedSnapshot));
+		int version = checkVersion(in);
+		DatabaseSnapshot snapshot = new DatabaseSnapshot();
+		if (version >= SHARD_FORMAT_VERSION) {
+			snapshot.setShard(in.readInt(), in.readInt());
+		}
+
+		int events = in.readInt();
+		for (int i = 0; i < events; i++) {
+			EventCategories eventName = readEvent(in);
+			snapshot.getScores().put(eventName, readScores(in));
+		}
+
+		int results = in.readInt();
+		for (int i = 0; i < results; i++) {
+			EventCategories eventName = readEvent(in);
+			snapshot.getResults().put(eventName, readResults(in));
+		}
+
+		int nations = in.readInt();
+		for (int i = 0; i < nations; i++) {
+			NationCategories nation = NationCategories.values()[in
+					.readUnsignedByte()];
+			snapshot.getMedalTallies().put(nation, readTally(in));
+		}
+
+		int partitions = in.readInt();
+		for (int i = 0; i < partitions; i++) {
+			String partitionName = in.readUTF();
+			snapshot.setFirstSegment(partitionName, in.readInt());
+		}
+
+		if (version >= UPDATE_ID_FORMAT_VERSION) {
+			int producers = in.readInt();
+			for (int i = 0; i < producers; i++) {
+				String producerId = in.readUTF();
+				int sequences = in.readInt();
+				for (int j = 0; j < sequences; j++) {
+					snapshot.getTallySequences().claim(
+							new UpdateId(producerId, in.readLong()));
+				}
+			}
+		}
+
+		if (version >= SCORE_SEQUENCE_FORMAT_VERSION) {
+			int scoredEvents = in.readInt();
+			for (int i = 0; i < scoredEvents; i++) {
+				EventCategories eventName = readEvent(in);
+				Map<String, Long> lastSequences = new HashMap<String, Long>();
+				int producers = in.readInt();
+				for (int j = 0; j < producers; j++) {
+					lastSequences.put(in.readUTF(), in.readLong());
+				}
+				snapshot.getScoreSequences().put(eventName, lastSequences);
+			}
+			snapshot.setTallyUpdates(in.readLong());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Writes an athlete.
+	 *
+	 * @param out
+	 * @param athlete
+	 * @throws IOException
+	 */
+	public static void writeAthlete(DataOutput out, Athlete athlete)
+			throws IOException {
+		UUID uuidName = parseUUID(athlete.getName());
+		int flags = (uuidName != null ? UUID_NAME : 0)
+				| (athlete.getTimestamp() != null ? HAS_TIMESTAMP : 0);
+		out.writeByte(flags);
+		if (uuidName != null) {
+			out.writeLong(uuidName.getMostSignificantBits());
+			out.writeLong(uuidName.getLeastSignificantBits());
+		} else {
+			out.writeUTF(athlete.getName());
+		}
+		out.writeByte(athlete.getNationality().ordinal());
+		out.writeByte(athlete.getEvent().ordinal());
+		out.writeInt(athlete.getScore());
+		if (athlete.getTimestamp() != null) {
+			out.writeLong(athlete.getTimestamp());
+		}
+	}
+
+	/**
+	 * Reads an athlete.
+	 *
+	 * @param in
+	 * @return Athlete
+	 * @throws IOException
+	 */
+	public static Athlete readAthlete(DataInput in) throws IOException {
+		int flags = in.readUnsignedByte();
+		String name = null;
+		if ((flags & UUID_NAME) != 0) {
+			name = new UUID(in.readLong(), in.readLong()).toString();
+		} else {
+			name = in.readUTF();
+		}
+		NationCategories nationality = NationCategories.values()[in
+				.readUnsignedByte()];
+		EventCategories event = readEvent(in);
+		Athlete athlete = new Athlete(name, nationality, event, in.readInt());
+		if ((flags & HAS_TIMESTAMP) != 0) {
+			athlete.setTimestamp(in.readLong());
+		}
+		return athlete;
+	}
+
+	/**
+	 * Writes a list of athlete scores.
+	 *
+	 * @param out
+	 * @param scores
+	 * @throws IOException
+	 */
+	public static void writeScores(DataOutput out, List<Athlete> scores)
+			throws IOException {
+		out.writeInt(scores.size());
+		for (Athlete athlete : scores) {
+			writeAthlete(out, athlete);
+		}
+	}
+
+	/**
+	 * Reads a list of athlete scores.
+	 *
+	 * @param in
+	 * @return ArrayList<Athlete>
+	 * @throws IOException
+	 */
+	public static ArrayList<Athlete> readScores(DataInput in)
+			throws IOException {
+		int size = in.readInt();
+		ArrayList<Athlete> scores = new ArrayList<Athlete>(size);
+		for (int i = 0; i < size; i++) {
+			scores.add(readAthlete(in));
+		}
+		return scores;
+	}
+
+	/**
+	 * Writes the results of an event.
+	 *
+	 * @param out
+	 * @param eventResult
+	 * @throws IOException
+	 */
+	public static void writeResults(DataOutput out, Results eventResult)
+			throws IOException {
+		for (MedalCategories medalType : MedalCategories.values()) {
+			NationCategories team = eventResult.getTeam(medalType);
+			out.writeByte(team != null ? team.ordinal() : NO_WINNER);
+		}
+		writeTimestamp(out, eventResult);
+	}
+
+	/**
+	 * Reads the results of an event.
+	 *
+	 * @param in
+	 * @return Results
+	 * @throws IOException
+	 */
+	public static Results readResults(DataInput in) throws IOException {
+		Results eventResult = new Results();
+		for (MedalCategories medalType : MedalCategories.values()) {
+			byte team = in.readByte();
+			if (team != NO_WINNER) {
+				eventResult.setTeam(medalType, NationCategories.values()[team]);
+			}
+		}
+		readTimestamp(in, eventResult);
+		return eventResult;
+	}
+
+	/**
+	 * Writes the medal tally of a nation.
+	 *
+	 * @param out
+	 * @param medalTally
+	 * @throws IOException
+	 */
+	public static void writeTally(DataOutput out, Tally medalTally)
+			throws IOException {
+		for (MedalCategories medalType : MedalCategories.values()) {
+			out.writeInt(medalTally.getCount(medalType));
+		}
+		writeTimestamp(out, medalTally);
+	}
+
+	/**
+	 * Reads the medal tally of a nation.
+	 *
+	 * @param in
+	 * @return Tally
+	 * @throws IOException
+	 */
+	public static Tally readTally(DataInput in) throws IOException {
+		Tally medalTally = new Tally();
+		for (MedalCategories medalType : MedalCategories.values()) {
+			medalTally.setCount(medalType, in.readInt());
+		}
+		readTimestamp(in, medalTally);
+		return medalTally;
+	}
+
+	private static void writeTimestamp(DataOutput out, Printable printable)
+			throws IOException {
+		out.writeBoolean(printable.getTimestamp() != null);
+		if (printable.getTimestamp() != null) {
+			out.writeLong(printable.getTimestamp());
+		}
+	}
+
+	private static void readTimestamp(DataInput in, Printable printable)
+			throws IOException {
+		if (in.readBoolean()) {
+			printable.setTimestamp(in.readLong());
+		}
+	}
+
+	private static EventCategories readEvent(DataInput in) throws IOException {
+		return EventCategories.values()[in.readUnsignedByte()];
+	}
+
+	/**
+	 * Writes the id of an update, or a marker if there is none.
+	 *
+	 * @param out
+	 * @param updateId
+	 * @throws IOException
+	 */
+	private static void writeUpdateId(DataOutput out, UpdateId updateId)
+			throws IOException {
+		out.writeBoolean(updateId != null);
+		if (updateId != null) {
+			out.writeUTF(updateId.getProducerId());
+			out.writeLong(updateId.getSequence());
+		}
+	}
+
+	private static UpdateId readUpdateId(DataInput in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		return new UpdateId(in.readUTF(), in.readLong());
+	}
+
+	/**
+	 * Reads the format version, which must be one this codec can read.
+	 *
+	 * @param in
+	 * @return The format version.
+	 * @throws IOException
+	 */
+	private static int checkVersion(DataInput in) throws IOException {
+		byte version = in.readByte();
+		if (version < FIRST_FORMAT_VERSION || version > FORMAT_VERSION) {
+			throw new IOException("Unsupported record format version "
+					+ version + ".");
+		}
+		return version;
+	}
+
+	/**
+	 * Parses a name as a UUID if it is one in canonical form.
+	 *
+	 * @param name
+	 * @return UUID, or null if the name is not a canonical UUID.
+	 */
+	private static UUID parseUUID(String name) {
+		if (name == null || name.length() != 36) {
+			return null;
+		}
+		try {
+			UUID uuid = UUID.fromString(name);
+			return uuid.toString().equals(name) ? uuid : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import base.Athlete;
+import base.ScoreSample;
+
+/**
+ * Append-only, time-ordered history of the scores of one event. Every update
+ * is appended to the history file as [timestamp][length][encoded scores], so
+ * the samples of any time range lie in one contiguous stretch of the file and
+ * are returned by a single sequential read.
+ *
+ * The timestamp and file offset of every sample are kept in memory, so a range
+ * query binary searches for its first sample instead of scanning the file. The
+ * index is rebuilt from the file when it is opened, dropping a sample torn by
+ * a crash. Timestamps never decrease, even if concurrent updates are appended
+ * out of order.
+ *
+ * @author aravind
+ *
+ */
+public class ScoreHistory {
+	private static int HEADER_SIZE = 8 + 4;
+	private static int INITIAL_INDEX_SIZE = 1024;
+
+	private String fileName;
+	private DataOutputStream out;
+	private long size;
+
+	private long[] timestamps;
+	private long[] offsets;
+	private int samples;
+
+	public ScoreHistory(String fileName) throws IOException {
+		this.fileName = fileName;
+		this.timestamps = new long[INITIAL_INDEX_SIZE];
+		this.offsets = new long[INITIAL_INDEX_SIZE];
+		buildIndex();
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName, true)));
+	}
+
+	/**
+	 * Scans the history file to rebuild the index, truncating the file after
+	 * the last complete sample.
+	 *
+	 * @throws IOException
+	 */
+	private void buildIndex() throws IOException {
+		File historyFile = new File(this.fileName);
+		if (!historyFile.exists()) {
+			return;
+		}
+		long fileLength = historyFile.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(historyFile)));
+		try {
+			while (true) {
+				long timestamp = in.readLong();
+				int length = in.readInt();
+				if (this.size + HEADER_SIZE + length > fileLength) {
+					break;
+				}
+				in.skipBytes(length);
+				addToIndex(timestamp, this.size);
+				this.size += HEADER_SIZE + length;
+			}
+		} catch (EOFException e) {
+			// The end of the file, or a sample torn by a crash.
+		} finally {
+			in.close();
+		}
+		if (fileLength > this.size) {
+			RandomAccessFile file = new RandomAccessFile(historyFile, "rw");
+			try {
+				file.setLength(this.size);
+			} finally {
+				file.close();
+			}
+		}
+	}
+
+	private void addToIndex(long timestamp, long offset) {
+		if (this.samples == this.timestamps.length) {
+			this.timestamps = Arrays.copyOf(this.timestamps,
+					this.samples * 2);
+			this.offsets = Arrays.copyOf(this.offsets, this.samples * 2);
+		}
+		this.timestamps[this.samples] = timestamp;
+		this.offsets[this.samples] = offset;
+		this.samples++;
+	}
+
+	/**
+	 * Appends the scores of the event as of the given time. The sample is
+	 * written to the operating system but not synced; the history is rebuilt
+	 * from the file as far as it reached disk.
+	 *
+	 * @param timestamp
+	 * @param scores
+	 * @throws IOException
+	 */
+	public synchronized void append(long timestamp, List<Athlete> scores)
+			throws IOException {
+		if (this.samples > 0) {
+			timestamp = Math.max(timestamp, this.timestamps[this.samples - 1]);
+		}
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		DataOutputStream encoder = new DataOutputStream(bytesOut);
+		RecordCodec.writeScores(encoder, scores);
+		encoder.close();
+
+		this.out.writeLong(timestamp);
+		this.out.writeInt(bytesOut.size());
+		bytesOut.writeTo(this.out);
+		this.out.flush();
+		addToIndex(timestamp, this.size);
+		this.size += HEADER_SIZE + bytesOut.size();
+	}
+
+	/**
+	 * Returns the samples recorded between two times, inclusive, in the order
+	 * they were recorded.
+	 *
+	 * @param fromTimestamp
+	 * @param toTimestamp
+	 * @return List<ScoreSample>
+	 * @throws IOException
+	 */
+	public List<ScoreSample> getRange(long fromTimestamp, long toTimestamp)
+			throws IOException {
+		List<ScoreSample> range = new ArrayList<ScoreSample>();
+		long startOffset;
+		long endOffset;
+		synchronized (this) {
+			int first = firstSampleAtOrAfter(fromTimestamp);
+			if (first == this.samples
+					|| this.timestamps[first] > toTimestamp) {
+				return range;
+			}
+			startOffset = this.offsets[first];
+			// Samples appended after this point are not read, so a reader
+			// never sees one that is only partly written.
+			endOffset = this.size;
+		}
+
+		FileInputStream fileIn = new FileInputStream(this.fileName);
+		try {
+			fileIn.getChannel().position(startOffset);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					fileIn));
+			long offset = startOffset;
+			while (offset < endOffset) {
+				long timestamp = in.readLong();
+				int length = in.readInt();
+				if (timestamp > toTimestamp) {
+					break;
+				}
+				range.add(new ScoreSample(timestamp, RecordCodec
+						.readScores(in)));
+				offset += HEADER_SIZE + length;
+			}
+		} finally {
+			fileIn.close();
+		}
+		return range;
+	}
+
+	/**
+	 * @param timestamp
+	 * @return The index of the first sample recorded at or after timestamp,
+	 *         or the number of samples if there is none.
+	 */
+	private int firstSampleAtOrAfter(long timestamp) {
+		int low = 0;
+		int high = this.samples;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.timestamps[middle] < timestamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	public synchronized void close() throws IOException {
+		this.out.close();
+	}
+}
@@ -0,0 +1,235 @@
+package server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import base.Athlete;
+import base.AthleteScores;
+import base.EventCategories;
+import base.ScoreSample;
+import base.UpdateId;
+import base.Versioned;
+
+/**
+ * The scores of a single event, stored independently of every other event.
+ * Each segment has its own {@link LogPartition}, so an update to one event
+ * never touches the files of, or blocks writers of, another event.
+ *
+ * A producer may have several updates of the segment in flight, which can
+ * arrive out of order. Scores carrying an {@link UpdateId} older than the
+ * last applied from the same producer are dropped once logged, so they never
+ * replace newer ones or enter the history. The last sequence applied from
+ * each producer is rebuilt from checkpoints and the log, so a restart does not
+ * forget it.
+ *
+ * @author aravind
+ *
+ */
+public class ScoreSegment {
+	private EventCategories eventName;
+	private LogPartition partition;
+	private ScoreHistory history;
+	private AtomicLong versionCounter;
+	private ChangeFeed changeFeed;
+
+	/**
+	 * Replaced whole, with a new version, on every update and never modified
+	 * once published, so readers take it without locking.
+	 */
+	private volatile Versioned<List<Athlete>> scores;
+
+	/**
+	 * The sequence number of the last update applied from each producer.
+	 */
+	private HashMap<String, Long> lastSequences;
+
+	/**
+	 * Set while the log is replayed, when scores are already in the history.
+	 */
+	private volatile boolean recovering;
+
+	/**
+	 * @param eventName
+	 * @param segmentPrefix
+	 * @param historyFileName
+	 * @param configuration
+	 * @param versionCounter
+	 *            Issues the version of each update applied to the segment.
+	 * @param changeFeed
+	 *            Receives each update applied to the segment.
+	 * @throws IOException
+	 */
+	public ScoreSegment(EventCategories eventName, String segmentPrefix,
+			String historyFileName, StorageConfiguration configuration,
+			AtomicLong versionCounter, ChangeFeed changeFeed)
+			throws IOException {
+		this.eventName = eventName;
+		this.versionCounter = versionCounter;
+		this.changeFeed = changeFeed;
+		this.scores = Versioned.<List<Athlete>> of(
+				versionCounter.incrementAndGet(),
+				AthleteScores.of(new ArrayList<Athlete>()));
+		this.lastSequences = new HashMap<String, Long>();
+		this.history = new ScoreHistory(historyFileName);
+		this.partition = new LogPartition(eventName.name(), segmentPrefix,
+				configuration, new GroupCommitter.CommitListener() {
+
+					@Override
+					public void committed(LogRecord record) {
+						if (isLatest(record.getUpdateId())) {
+							setScores(record.getScores());
+							if (!recovering) {
+								appendHistory(record.getScores());
+							}
+						}
+					}
+				});
+	}
+
+	public EventCategories getEventName() {
+		return this.eventName;
+	}
+
+	public LogPartition getPartition() {
+		return this.partition;
+	}
+
+	/**
+	 * Logs new scores for the event with the given durability, unless a newer
+	 * update from the same producer has already been applied. They are
+	 * applied and appended to the history once logged, if no newer update
+	 * from the producer overtook them meanwhile.
+	 *
+	 * @param currentScores
+	 * @param updateId
+	 *            The id of the update, or null.
+	 * @param durability
+	 * @throws IOException
+	 */
+	public void update(List<Athlete> currentScores, UpdateId updateId,
+			Durability durability) throws IOException {
+		if (updateId != null && !isAfterLast(updateId)) {
+			return;
+		}
+		this.partition.log(
+				LogRecord.scoreUpdate(this.eventName, currentScores)
+						.withUpdateId(updateId), durability);
+	}
+
+	/**
+	 * Records applied scores in the history. A failure is only reported, as
+	 * the scores are already logged and applied.
+	 *
+	 * @param scores
+	 */
+	private void appendHistory(List<Athlete> scores) {
+		try {
+			this.history.append(System.currentTimeMillis(), scores);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Replays the segment's log from a segment onwards, without adding the
+	 * replayed scores to the history again.
+	 *
+	 * @param firstSegment
+	 * @return The number of records replayed.
+	 * @throws IOException
+	 */
+	public int recover(int firstSegment) throws IOException {
+		this.recovering = true;
+		try {
+			return this.partition.replay(firstSegment);
+		} finally {
+			this.recovering = false;
+		}
+	}
+
+	private synchronized boolean isAfterLast(UpdateId updateId) {
+		Long lastSequence = this.lastSequences.get(updateId.getProducerId());
+		return lastSequence == null || updateId.getSequence() > lastSequence;
+	}
+
+	/**
+	 * Records an update as the last applied from its producer, unless a newer
+	 * one has been. Updates without an id are always applied.
+	 *
+	 * @param updateId
+	 * @return true if the update should be applied.
+	 */
+	private synchronized boolean isLatest(UpdateId updateId) {
+		if (updateId == null) {
+			return true;
+		}
+		if (!isAfterLast(updateId)) {
+			return false;
+		}
+		this.lastSequences.put(updateId.getProducerId(),
+				updateId.getSequence());
+		return true;
+	}
+
+	/**
+	 * @return A copy of the sequence number of the last update applied from
+	 *         each producer.
+	 */
+	public synchronized Map<String, Long> getLastSequences() {
+		return new HashMap<String, Long>(this.lastSequences);
+	}
+
+	/**
+	 * Restores the last update applied from each producer, as of a
+	 * checkpoint.
+	 *
+	 * @param lastSequences
+	 */
+	public synchronized void setLastSequences(Map<String, Long> lastSequences) {
+		this.lastSequences = new HashMap<String, Long>(lastSequences);
+	}
+
+	/**
+	 * Reads the scores recorded between two times, inclusive.
+	 *
+	 * @param fromTimestamp
+	 * @param toTimestamp
+	 * @return List<ScoreSample>
+	 * @throws IOException
+	 */
+	public List<ScoreSample> getHistory(long fromTimestamp, long toTimestamp)
+			throws IOException {
+		return this.history.getRange(fromTimestamp, toTimestamp);
+	}
+
+	public List<Athlete> getScores() {
+		return this.scores.getValue();
+	}
+
+	public Versioned<List<Athlete>> getVersionedScores() {
+		return this.scores;
+	}
+
+	/**
+	 * Publishes new scores, copied into {@link AthleteScores}. Updates of a
+	 * segment are applied one at a time by its partition, so they reach the
+	 * change feed in the order applied.
+	 *
+	 * @param scores
+	 */
+	public void setScores(List<Athlete> scores) {
+		List<Athlete> columnarScores = AthleteScores.of(scores);
+		this.scores = Versioned.of(this.versionCounter.incrementAndGet(),
+				columnarScores);
+		this.changeFeed.publish(Change.scores(this.eventName, columnarScores));
+	}
+
+	public void close() throws IOException {
+		this.partition.close();
+		this.history.close();
+	}
+}
@@ -116,8 +116,24 @@ public class ServiceFinder implements ServiceFinderInterface {
 	@Override
 	public void registerService(String serviceName, int PID, String address,
 			int rmiPort) throws RemoteException {
+		registerService(serviceName, PID, address, rmiPort, 0, 1);
+	}
+
+	/**
+	 * Registers a server holding one shard of a specified service.
+	 * 
+	 * @param serviceName
+	 * @param PID
+	 * @param address
+	 * @param rmiPort
+	 * @param shardIndex
+	 * @param shardCount
+	 */
+	@Override
+	public void registerService(String serviceName, int PID, String address,
+			int rmiPort, int shardIndex, int shardCount) throws RemoteException {
 		ServerDetail newServerDetail = new ServerDetail(serviceName, PID,
-				address, rmiPort);
+				address, rmiPort, shardIndex, shardCount);
 		synchronized (this.services) {
 			this.services.add(newServerDetail);
 			synchronized (this.clientStates) {
@@ -245,6 +261,26 @@ public class ServiceFinder implements ServiceFinderInterface {
 		return null;
 	}
 
+	/**
+	 * Retrieves the server offering the specified service whose shard owns a
+	 * key.
+	 * 
+	 * @param serviceName
+	 * @param shardKey
+	 *            The ordinal of an event or a nation.
+	 * @return The server details, or null if no server owns the key.
+	 */
+	@Override
+	public ServerDetail getShardService(String serviceName, int shardKey)
+			throws RemoteException {
+		for (ServerDetail curServerDetail : getServices(serviceName)) {
+			if (curServerDetail.ownsShardKey(shardKey)) {
+				return curServerDetail;
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public void beat(String serverName) throws RemoteException {
 		// System.err.println("Received hearbeat from " + serverName);
@@ -252,6 +288,43 @@ public class ServiceFinder implements ServiceFinderInterface {
 			heartbeats.put(serverName, System.currentTimeMillis());
 		}
 	}
+
+	/**
+	 * Moves a registered server to another service, provided no server offers
+	 * that service for the same shard. Used to promote a standby once the
+	 * server it backs up has stopped sending heartbeats and been removed, so at
+	 * most one server is promoted per shard.
+	 * 
+	 * @param serverName
+	 * @param serviceName
+	 * @return true if the server now offers serviceName.
+	 */
+	@Override
+	public boolean promoteService(String serverName, String serviceName)
+			throws RemoteException {
+		ServerDetail promotedServer = null;
+		synchronized (this.services) {
+			promotedServer = getServerDetail(serverName);
+			if (promotedServer == null) {
+				return false;
+			}
+			for (ServerDetail curServerDetail : getServices(serviceName)) {
+				if (curServerDetail.isSameShard(promotedServer)) {
+					return false;
+				}
+			}
+			promotedServer.setServiceName(serviceName);
+		}
+		synchronized (this.heartbeats) {
+			Long lastBeat = this.heartbeats.remove(serverName);
+			if (lastBeat != null) {
+				this.heartbeats.put(promotedServer.getServerName(), lastBeat);
+			}
+		}
+		System.out.println("Promoted " + serverName + " to " + serviceName
+				+ ".");
+		return true;
+	}
 }
 
 class LoadBalancer implements Runnable {
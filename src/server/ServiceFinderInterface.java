@@ -10,6 +10,10 @@ public interface ServiceFinderInterface extends Remote {
 	public void registerService(String serviceName, int PID, String address,
 			int servicePort) throws RemoteException;
 
+	public void registerService(String serviceName, int PID, String address,
+			int servicePort, int shardIndex, int shardCount)
+			throws RemoteException;
+
 	public ServerDetail getService(String serviceName) throws RemoteException;
 
 	public List<ServerDetail> getServices(String serviceName)
@@ -19,5 +23,11 @@ public interface ServiceFinderInterface extends Remote {
 
 	public ServerDetail getServerDetail(String serverName) throws RemoteException;
 
+	public ServerDetail getShardService(String serviceName, int shardKey)
+			throws RemoteException;
+
 	public void beat(String serverName) throws RemoteException;
+
+	public boolean promoteService(String serverName, String serviceName)
+			throws RemoteException;
 }
@@ -0,0 +1,147 @@
+package server;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Coalesces concurrent Obelix cache misses on the same key into one fetch
+ * from Orgetorix. The first caller to miss loads the value; callers missing
+ * while it is in flight wait for it and share its value, or its failure,
+ * instead of fetching it again. A loader should check the cache before
+ * fetching, so a caller arriving just after a fetch completes is served the
+ * value it cached rather than starting another.
+ *
+ * @author aravind
+ *
+ * @param <K>
+ *            EventCategories or NationCategories.
+ * @param <V>
+ *            The value loaded.
+ */
+public class SingleFlight<K extends Enum<K>, V> {
+
+	/**
+	 * Loads the value of a key on a cache miss.
+	 */
+	public interface Loader<V> {
+		public V load() throws RemoteException;
+	}
+
+	/**
+	 * A load in progress, and its outcome once complete.
+	 */
+	private static class Flight<V> {
+		private boolean complete;
+		private V value;
+		private RemoteException failure;
+
+		private synchronized void complete(V value, RemoteException failure) {
+			this.value = value;
+			this.failure = failure;
+			this.complete = true;
+			this.notifyAll();
+		}
+
+		private synchronized V await() throws RemoteException {
+			while (!this.complete) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					throw new RemoteException("Interrupted waiting for a"
+							+ " fetch in flight.", e);
+				}
+			}
+			if (this.failure != null) {
+				throw this.failure;
+			}
+			return this.value;
+		}
+	}
+
+	private AtomicReferenceArray<Flight<V>> flights;
+
+	public SingleFlight(Class<K> keyType) {
+		this.flights = new AtomicReferenceArray<Flight<V>>(
+				keyType.getEnumConstants().length);
+	}
+
+	/**
+	 * Loads the value of a key, or waits for the load already in flight for
+	 * it.
+	 *
+	 * @param key
+	 * @param loader
+	 * @return The value loaded.
+	 * @throws RemoteException
+	 *             If the load failed.
+	 */
+	public V fetch(K key, Loader<V> loader) throws RemoteException {
+		Flight<V> flight = new Flight<V>();
+		while (!this.flights.compareAndSet(key.ordinal(), null, flight)) {
+			Flight<V> inFlight = this.flights.get(key.ordinal());
+			if (inFlight != null) {
+				return inFlight.await();
+			}
+		}
+		return load(key, flight, loader);
+	}
+
+	/**
+	 * Starts loading the value of a key on the executor, unless a load of it
+	 * is already in flight. Callers missing on the key meanwhile wait for
+	 * this load as they would for any other.
+	 *
+	 * @param key
+	 * @param loader
+	 * @param executor
+	 * @return Whether a load was started.
+	 */
+	public boolean fetchInBackground(final K key, final Loader<V> loader,
+			Executor executor) {
+		final Flight<V> flight = new Flight<V>();
+		if (!this.flights.compareAndSet(key.ordinal(), null, flight)) {
+			return false;
+		}
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						load(key, flight, loader);
+					} catch (RemoteException e) {
+						System.out.println("Background fetch of " + key
+								+ " failed: " + e.getMessage());
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.flights.set(key.ordinal(), null);
+			flight.complete(null, new RemoteException(
+					"Background fetch rejected.", e));
+			return false;
+		}
+		return true;
+	}
+
+	private V load(K key, Flight<V> flight, Loader<V> loader)
+			throws RemoteException {
+		V value = null;
+		RemoteException failure = null;
+		try {
+			value = loader.load();
+			return value;
+		} catch (RemoteException e) {
+			failure = e;
+			throw e;
+		} catch (RuntimeException e) {
+			failure = new RemoteException("Fetch failed.", e);
+			throw e;
+		} finally {
+			this.flights.set(key.ordinal(), null);
+			flight.complete(value, failure);
+		}
+	}
+}
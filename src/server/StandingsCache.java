@@ -0,0 +1,58 @@
+package server;
+
+import base.OlympicException;
+import base.Standings;
+
+/**
+ * Caches the whole medal table as a single object, so it is fetched and
+ * merged once per medal change however many clients ask for it. Every
+ * invalidation starts a new generation, and a table fetched during an earlier
+ * generation is not cached, so a fetch racing with a medal change never
+ * brings back the table from before it.
+ *
+ * @author aravind
+ *
+ */
+public class StandingsCache {
+	private static long TTL = 30000;
+
+	private Standings standings;
+	private long timestamp;
+	private long generation;
+
+	public synchronized Standings getStandings() throws OlympicException {
+		if (this.standings == null) {
+			throw new OlympicException("Not in cache.");
+		}
+		return this.standings;
+	}
+
+	public synchronized Standings getStandings(long currentTimeStamp)
+			throws OlympicException {
+		if (this.standings != null && currentTimeStamp > this.timestamp + TTL) {
+			throw new OlympicException("Cached standings are stale.");
+		}
+		return getStandings();
+	}
+
+	/**
+	 * @return The generation to pass to {@link #cache(Standings, long, long)}
+	 *         for a table about to be fetched.
+	 */
+	public synchronized long getGeneration() {
+		return this.generation;
+	}
+
+	public synchronized void cache(Standings standings, long timestamp,
+			long generation) {
+		if (generation == this.generation) {
+			this.standings = standings;
+			this.timestamp = timestamp;
+		}
+	}
+
+	public synchronized void invalidate() {
+		this.standings = null;
+		this.generation++;
+	}
+}
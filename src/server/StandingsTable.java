@@ -0,0 +1,76 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import base.NationCategories;
+import base.Standings;
+import base.Standings.Standing;
+import base.Tally;
+import base.Versioned;
+
+/**
+ * The medal table of the nations held by an Orgetorix, kept ranked as tallies
+ * change. A change moves only the nation whose tally changed: it is removed
+ * and put back at the place found by binary search, and the new table is
+ * published as one {@link Standings}, which every reader shares until the
+ * next medal change.
+ *
+ * Tallies are passed in with their version in the store, so a tally read
+ * before a concurrent update never replaces the tally that update produced.
+ *
+ * @author aravind
+ *
+ */
+public class StandingsTable {
+	private ArrayList<Standing> ranked;
+	private Map<NationCategories, Long> versions;
+	private volatile Standings standings;
+
+	public StandingsTable() {
+		this.ranked = new ArrayList<Standing>();
+		this.versions = new EnumMap<NationCategories, Long>(
+				NationCategories.class);
+		this.standings = new Standings(this.ranked, 0);
+	}
+
+	/**
+	 * Places a nation's tally in the table, unless the table already holds
+	 * that version or a later one.
+	 *
+	 * @param nation
+	 * @param versionedTally
+	 */
+	public synchronized void update(NationCategories nation,
+			Versioned<Tally> versionedTally) {
+		Long version = this.versions.get(nation);
+		if (version != null && version >= versionedTally.getVersion()) {
+			return;
+		}
+		this.versions.put(nation, versionedTally.getVersion());
+		for (int i = 0; i < this.ranked.size(); i++) {
+			if (this.ranked.get(i).getNation() == nation) {
+				this.ranked.remove(i);
+				break;
+			}
+		}
+		Standing standing = new Standing(nation, versionedTally.getValue());
+		int place = Collections.binarySearch(this.ranked, standing,
+				Standings.RANKING);
+		this.ranked.add((place < 0) ? -place - 1 : place, standing);
+		Long timestamp = versionedTally.getValue().getTimestamp();
+		this.standings = new Standings(this.ranked, Math.max(
+				this.standings.getTimestamp(), (timestamp == null) ? 0
+						: timestamp));
+	}
+
+	/**
+	 * @param topN
+	 * @return The first topN places of the current table.
+	 */
+	public Standings getStandings(int topN) {
+		return this.standings.getTop(topN);
+	}
+}
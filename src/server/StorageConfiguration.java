@@ -0,0 +1,225 @@
+package server;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import server.LogRecord.RecordType;
+
+/**
+ * Tunable parameters of the Orgetorix storage engine. Options are given on the
+ * command line in the form --name=value.
+ *
+ * @author aravind
+ *
+ */
+public class StorageConfiguration {
+
+	/**
+	 * Where results and medal tallies are kept. LOG - in memory, recovered
+	 * from the update log and checkpoints. MAPPED - in a fixed-layout
+	 * memory-mapped file, see {@link MappedTallyStore}.
+	 */
+	public enum StorageMode {
+		LOG, MAPPED
+	}
+
+	/**
+	 * The {@link StorageEngine} holding the database, see
+	 * {@link StorageEngines}. MEMORY - {@link MemoryStorageEngine}, nothing
+	 * on disk. FILE - {@link FileStorageEngine}, one serialized file per
+	 * dataset. LOG - {@link LogStructuredStore}. MMAP - LogStructuredStore
+	 * with the results and tallies in MAPPED storage mode.
+	 */
+	public enum Engine {
+		MEMORY, FILE, LOG, MMAP
+	}
+
+	private static String OPTION_PREFIX = "--";
+	private static String ENGINE_OPTION = "engine";
+	private static String STORAGE_OPTION = "storage";
+	private static String COMMIT_WINDOW_OPTION = "commitwindow";
+	private static String COMMIT_BATCH_OPTION = "commitbatch";
+	private static String WRITE_BEHIND_QUEUE_OPTION = "writebehindqueue";
+	private static String FLUSH_INTERVAL_OPTION = "flushinterval";
+
+	/**
+	 * Time in milliseconds a group commit waits for more writes to join it,
+	 * and the largest number of writes flushed together.
+	 */
+	private long commitWindow = 2;
+	private int maxBatchSize = 64;
+
+	/**
+	 * Capacity of the write-behind queue, and the time in milliseconds between
+	 * background flushes of it.
+	 */
+	private int writeBehindCapacity = 1024;
+	private long flushInterval = 200;
+
+	/**
+	 * Durability of each type of write. Live scores can tolerate losing the
+	 * last flush interval, while results and tallies cannot.
+	 */
+	private Map<RecordType, Durability> durabilities;
+
+	private Engine engine = Engine.LOG;
+	private StorageMode storageMode = StorageMode.LOG;
+
+	/**
+	 * The shard the database holds, as index of count, recorded in its
+	 * checkpoints so it is never opened under another layout.
+	 */
+	private int shardIndex = 0;
+	private int shardCount = 1;
+
+	public StorageConfiguration() {
+		this.durabilities = new EnumMap<RecordType, Durability>(
+				RecordType.class);
+		this.durabilities.put(RecordType.SCORES, Durability.ASYNC);
+		this.durabilities.put(RecordType.RESULTS, Durability.SYNC);
+		this.durabilities.put(RecordType.TALLIES, Durability.SYNC);
+	}
+
+	/**
+	 * Returns true if the argument is a storage option rather than a
+	 * positional argument.
+	 *
+	 * @param arg
+	 * @return boolean
+	 */
+	public static boolean isOption(String arg) {
+		return arg.startsWith(OPTION_PREFIX);
+	}
+
+	/**
+	 * Applies a single --name=value option.
+	 *
+	 * @param option
+	 * @throws IllegalArgumentException
+	 *             if the option is not recognized.
+	 */
+	public void parseOption(String option) {
+		String[] nameAndValue = option.substring(OPTION_PREFIX.length())
+				.split("=", 2);
+		if (nameAndValue.length != 2) {
+			throw new IllegalArgumentException("Malformed option " + option
+					+ ".");
+		}
+		String name = nameAndValue[0];
+		String value = nameAndValue[1];
+		if (name.equals(ENGINE_OPTION)) {
+			setEngine(Engine.valueOf(value.toUpperCase()));
+		} else if (name.equals(STORAGE_OPTION)) {
+			setStorageMode(StorageMode.valueOf(value.toUpperCase()));
+		} else if (name.equals(COMMIT_WINDOW_OPTION)) {
+			setCommitWindow(Long.parseLong(value));
+		} else if (name.equals(COMMIT_BATCH_OPTION)) {
+			setMaxBatchSize(Integer.parseInt(value));
+		} else if (name.equals(WRITE_BEHIND_QUEUE_OPTION)) {
+			setWriteBehindCapacity(Integer.parseInt(value));
+		} else if (name.equals(FLUSH_INTERVAL_OPTION)) {
+			setFlushInterval(Long.parseLong(value));
+		} else if (getRecordType(name) != null) {
+			setDurability(getRecordType(name), Durability.fromMode(value));
+		} else {
+			throw new IllegalArgumentException("Unknown option " + option + ".");
+		}
+	}
+
+	public Engine getEngine() {
+		return this.engine;
+	}
+
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	public StorageMode getStorageMode() {
+		return this.storageMode;
+	}
+
+	public void setStorageMode(StorageMode storageMode) {
+		this.storageMode = storageMode;
+	}
+
+	public int getShardIndex() {
+		return this.shardIndex;
+	}
+
+	public int getShardCount() {
+		return this.shardCount;
+	}
+
+	public void setShard(int shardIndex, int shardCount) {
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+	}
+
+	public long getCommitWindow() {
+		return this.commitWindow;
+	}
+
+	public void setCommitWindow(long commitWindow) {
+		this.commitWindow = commitWindow;
+	}
+
+	public int getMaxBatchSize() {
+		return this.maxBatchSize;
+	}
+
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public int getWriteBehindCapacity() {
+		return this.writeBehindCapacity;
+	}
+
+	public void setWriteBehindCapacity(int writeBehindCapacity) {
+		this.writeBehindCapacity = writeBehindCapacity;
+	}
+
+	public long getFlushInterval() {
+		return this.flushInterval;
+	}
+
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	public Durability getDurability(RecordType type) {
+		return this.durabilities.get(type);
+	}
+
+	public void setDurability(RecordType type, Durability durability) {
+		this.durabilities.put(type, durability);
+	}
+
+	/**
+	 * Returns the record type whose durability is set by the named option,
+	 * e.g. --scores=async.
+	 *
+	 * @param name
+	 * @return RecordType, or null if the option does not name a record type.
+	 */
+	private static RecordType getRecordType(String name) {
+		for (RecordType type : RecordType.values()) {
+			if (type.name().equalsIgnoreCase(name)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return A usage string describing the supported options.
+	 */
+	public static String usage() {
+		return "[--" + ENGINE_OPTION + "=memory|file|log|mmap] [--"
+				+ STORAGE_OPTION + "=log|mapped]"
+				+ " [--scores|results|tallies=sync|group|async] [--"
+				+ COMMIT_WINDOW_OPTION + "=<ms>] [--" + COMMIT_BATCH_OPTION
+				+ "=<writes>] [--" + WRITE_BEHIND_QUEUE_OPTION
+				+ "=<writes>] [--" + FLUSH_INTERVAL_OPTION + "=<ms>]";
+	}
+}
@@ -0,0 +1,115 @@
+package server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import base.Athlete;
+import base.Event;
+import base.EventCategories;
+import base.GamesSnapshot;
+import base.NationCategories;
+import base.Results;
+import base.ScoreSample;
+import base.Tally;
+import base.UpdateId;
+import base.Versioned;
+
+/**
+ * Holds the scores, results and medal tallies behind {@link Orgetorix}. The
+ * engine is chosen on the command line with --engine, see
+ * {@link StorageEngines}, and every engine is held to the same behaviour:
+ *
+ * Updates carrying an {@link UpdateId} are idempotent. A tally update is
+ * credited once however often it is sent, and scores older than the last
+ * applied from the same producer are dropped.
+ *
+ * Every applied update gives the record it changed a new version, and is
+ * published as a {@link Change} for standbys and Obelix caches to follow.
+ *
+ * Reads never return an object that is modified afterwards.
+ *
+ * @author aravind
+ *
+ */
+public interface StorageEngine {
+	public void updateCurrentScores(EventCategories eventName,
+			List<Athlete> currentScores, UpdateId updateId) throws IOException;
+
+	public void updateResults(Event completedEvent, UpdateId updateId)
+			throws IOException;
+
+	public void updateMedalTallies(Results eventResult, UpdateId updateId)
+			throws IOException;
+
+	public Tally getMedalTally(NationCategories teamName);
+
+	public Map<NationCategories, Tally> getAllTallies();
+
+	public GamesSnapshot getGamesSnapshot();
+
+	/**
+	 * @param eventName
+	 * @return The results, or null if the event has not completed.
+	 */
+	public Results getResults(EventCategories eventName);
+
+	public List<Athlete> getCurrentScores(EventCategories eventName);
+
+	public List<ScoreSample> getScoreHistory(EventCategories eventName,
+			long fromTimestamp, long toTimestamp) throws IOException;
+
+	/**
+	 * Conditional reads: each returns the record with its version, or only
+	 * the version if it equals the one the caller already holds.
+	 */
+	public Versioned<Tally> getMedalTallyIfNewer(NationCategories teamName,
+			long version);
+
+	public Versioned<Results> getResultsIfNewer(EventCategories eventName,
+			long version);
+
+	public Versioned<List<Athlete>> getCurrentScoresIfNewer(
+			EventCategories eventName, long version);
+
+	/**
+	 * @param offset
+	 * @param maxChanges
+	 * @return The changes applied from offset onwards, or the whole state if
+	 *         the offset is no longer held.
+	 */
+	public ChangeBatch getChangesSince(long offset, int maxChanges);
+
+	/**
+	 * Applies a change replicated from a primary.
+	 *
+	 * @param change
+	 * @throws IOException
+	 */
+	public void applyChange(Change change) throws IOException;
+
+	/**
+	 * Replaces the record of the tally updates already credited with the one
+	 * sent by a primary in a resync.
+	 *
+	 * @param tallySequences
+	 * @throws IOException
+	 */
+	public void setTallySequences(ProducerSequences tallySequences)
+			throws IOException;
+
+	/**
+	 * Makes the current state durable, so a restart need not replay the
+	 * updates made before it.
+	 *
+	 * @throws IOException
+	 */
+	public void checkpoint() throws IOException;
+
+	/**
+	 * @return A summary of the engine's counters.
+	 */
+	public String getStatistics();
+
+	public void close() throws IOException;
+}
@@ -0,0 +1,50 @@
+package server;
+
+import java.io.IOException;
+
+import server.StorageConfiguration.Engine;
+import server.StorageConfiguration.StorageMode;
+
+/**
+ * Opens the {@link StorageEngine} selected by a {@link StorageConfiguration}.
+ *
+ * @author aravind
+ *
+ */
+public class StorageEngines {
+
+	private StorageEngines() {
+	}
+
+	/**
+	 * @param fileLocation
+	 * @param dbName
+	 * @param configuration
+	 * @return The engine, holding the database of that name if it exists.
+	 * @throws IOException
+	 */
+	public static StorageEngine open(String fileLocation, String dbName,
+			StorageConfiguration configuration) throws IOException {
+		switch (configuration.getEngine()) {
+		case MEMORY:
+			return new MemoryStorageEngine();
+		case FILE:
+			return new FileStorageEngine(fileLocation, dbName, configuration);
+		case MMAP:
+			configuration.setStorageMode(StorageMode.MAPPED);
+			return new LogStructuredStore(fileLocation, dbName, configuration);
+		default:
+			return new LogStructuredStore(fileLocation, dbName, configuration);
+		}
+	}
+
+	/**
+	 * @param engine
+	 * @return A configuration selecting the engine, otherwise the default.
+	 */
+	public static StorageConfiguration configure(Engine engine) {
+		StorageConfiguration configuration = new StorageConfiguration();
+		configuration.setEngine(engine);
+		return configuration;
+	}
+}
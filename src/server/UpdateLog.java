@@ -0,0 +1,197 @@
+package server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only log of the updates made to the Orgetorix database. Updates are
+ * appended as length-prefixed records to a segment file which is kept open, so
+ * the cost of a write is independent of the size of the database. The log is
+ * split into numbered segments so that segments covered by a checkpoint can be
+ * deleted.
+ *
+ * @author aravind
+ *
+ */
+public class UpdateLog {
+	private String segmentPrefix;
+	private int currentSegment;
+	private FileOutputStream segmentFileOut;
+	private DataOutputStream out;
+
+	public UpdateLog(String segmentPrefix) throws IOException {
+		this.segmentPrefix = segmentPrefix;
+		List<Integer> segments = listSegments();
+		this.currentSegment = segments.isEmpty() ? 0 : segments.get(segments
+				.size() - 1);
+		openSegment();
+	}
+
+	/**
+	 * Appends a batch of encoded records to the end of the current segment and
+	 * forces them to disk with a single sync.
+	 *
+	 * @param encodedRecords
+	 * @throws IOException
+	 */
+	public synchronized void appendAll(List<byte[]> encodedRecords)
+			throws IOException {
+		for (byte[] encodedRecord : encodedRecords) {
+			this.out.writeInt(encodedRecord.length);
+			this.out.write(encodedRecord);
+		}
+		this.out.flush();
+		this.segmentFileOut.getFD().sync();
+	}
+
+	/**
+	 * Closes the current segment and starts appending to a new one.
+	 *
+	 * @return The number of the new segment.
+	 * @throws IOException
+	 */
+	public synchronized int roll() throws IOException {
+		close();
+		this.currentSegment++;
+		openSegment();
+		return this.currentSegment;
+	}
+
+	/**
+	 * Reads back every complete record in the segments numbered firstSegment
+	 * and above, in the order in which they were appended. A partially written
+	 * record at the tail of a segment (left behind by a crash) is discarded.
+	 *
+	 * @param firstSegment
+	 * @return The records in the log from firstSegment onwards.
+	 * @throws IOException
+	 */
+	public synchronized List<LogRecord> replay(int firstSegment)
+			throws IOException {
+		List<LogRecord> records = new ArrayList<LogRecord>();
+		for (int segment : listSegments()) {
+			if (segment >= firstSegment) {
+				replaySegment(getSegmentFileName(segment), records);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Deletes the segments numbered below firstSegment, once their updates
+	 * have been captured by a checkpoint.
+	 *
+	 * @param firstSegment
+	 */
+	public synchronized void truncateBefore(int firstSegment) {
+		for (int segment : listSegments()) {
+			if (segment < firstSegment) {
+				new File(getSegmentFileName(segment)).delete();
+			}
+		}
+	}
+
+	/**
+	 * Closes the current segment.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		this.out.close();
+		this.segmentFileOut.close();
+	}
+
+	private void openSegment() throws IOException {
+		this.segmentFileOut = new FileOutputStream(
+				getSegmentFileName(this.currentSegment), true);
+		this.out = new DataOutputStream(this.segmentFileOut);
+	}
+
+	private String getSegmentFileName(int segment) {
+		return this.segmentPrefix + "." + segment;
+	}
+
+	/**
+	 * Lists the numbers of the segments present on disk in ascending order.
+	 *
+	 * @return List<Integer>
+	 */
+	private List<Integer> listSegments() {
+		List<Integer> segments = new ArrayList<Integer>();
+		File prefixFile = new File(this.segmentPrefix);
+		File directory = prefixFile.getAbsoluteFile().getParentFile();
+		String segmentFilePrefix = prefixFile.getName() + ".";
+		String[] fileNames = directory.list();
+		if (fileNames == null) {
+			return segments;
+		}
+		for (String fileName : fileNames) {
+			if (fileName.startsWith(segmentFilePrefix)) {
+				try {
+					segments.add(Integer.parseInt(fileName
+							.substring(segmentFilePrefix.length())));
+				} catch (NumberFormatException e) {
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private static void replaySegment(String segmentFileName,
+			List<LogRecord> records) throws IOException {
+		long segmentLength = new File(segmentFileName).length();
+		long validLength = 0;
+		DataInputStream in = new DataInputStream(new FileInputStream(
+				segmentFileName));
+		try {
+			while (true) {
+				int recordLength = in.readInt();
+				if (recordLength < 0
+						|| validLength + 4 + recordLength > segmentLength) {
+					break;
+				}
+				byte[] encodedRecord = new byte[recordLength];
+				in.readFully(encodedRecord);
+				records.add(decode(encodedRecord));
+				validLength += 4 + recordLength;
+			}
+		} catch (EOFException e) {
+		} finally {
+			in.close();
+		}
+
+		if (validLength < segmentLength) {
+			System.err.println("Discarding torn record at the end of "
+					+ segmentFileName + ".");
+			RandomAccessFile segmentFile = new RandomAccessFile(
+					segmentFileName, "rw");
+			segmentFile.setLength(validLength);
+			segmentFile.close();
+		}
+	}
+
+	/**
+	 * Encodes a record in the format stored in the log.
+	 *
+	 * @param record
+	 * @return byte[]
+	 * @throws IOException
+	 */
+	public static byte[] encode(LogRecord record) throws IOException {
+		return RecordCodec.encode(record);
+	}
+
+	private static LogRecord decode(byte[] encodedRecord) throws IOException {
+		return RecordCodec.decodeRecord(encodedRecord);
+	}
+}
@@ -0,0 +1,303 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import base.OlympicException;
+import base.Versioned;
+
+/**
+ * The Obelix cache of one type of data read from Orgetorix, keyed by event or
+ * nation. Each key's value, the time it was cached and its version in
+ * Orgetorix are held together in one immutable entry, published in a slot
+ * indexed by the key's ordinal, so a reader sees the three as they were
+ * cached together, and reads take no lock at all. Writers replace a key's
+ * entry whole, or compare-and-set it when the new entry depends on the old.
+ *
+ * An entry is fresh for the cache's time to live after it was cached or last
+ * revalidated. Only readers passing the current time check freshness, and
+ * may accept an entry a bounded time past it; the others rely on entries
+ * being invalidated when the data changes.
+ *
+ * An answer that Orgetorix has no data for a key yet, such as null or an
+ * empty list, can be cached as absent. Absent entries have their own, usually
+ * shorter, time to live, which every reader checks and which is never
+ * stretched, since the data they stand in for may appear at any moment.
+ * Writing data for a key starts a new absent generation of the key, and an
+ * answer read during an earlier generation is not cached, so a read racing
+ * with the write never brings the absent entry back.
+ *
+ * @author aravind
+ *
+ * @param <K>
+ *            EventCategories or NationCategories.
+ * @param <V>
+ *            The cached data, which must not be modified once cached.
+ */
+public class VersionedCache<K extends Enum<K>, V> {
+
+	/**
+	 * A cached value with the time it was cached, its version and whether it
+	 * stands for absent data.
+	 */
+	private static class Entry<V> {
+		private V value;
+		private long timestamp;
+		private long version;
+		private boolean absent;
+
+		private Entry(V value, long timestamp, long version, boolean absent) {
+			this.value = value;
+			this.timestamp = timestamp;
+			this.version = version;
+			this.absent = absent;
+		}
+
+		private boolean isAbsent() {
+			return this.absent;
+		}
+	}
+
+	private AtomicReferenceArray<Entry<V>> entries;
+	private AtomicLongArray absentGenerations;
+	private long ttl;
+	private long absentTtl;
+
+	/**
+	 * @param keyType
+	 * @param ttl
+	 *            How long an entry stays fresh, in milliseconds.
+	 */
+	public VersionedCache(Class<K> keyType, long ttl) {
+		this(keyType, ttl, ttl);
+	}
+
+	/**
+	 * @param keyType
+	 * @param ttl
+	 *            How long an entry stays fresh, in milliseconds.
+	 * @param absentTtl
+	 *            How long an absent entry stays fresh, in milliseconds.
+	 */
+	public VersionedCache(Class<K> keyType, long ttl, long absentTtl) {
+		this.entries = new AtomicReferenceArray<Entry<V>>(
+				keyType.getEnumConstants().length);
+		this.absentGenerations = new AtomicLongArray(
+				keyType.getEnumConstants().length);
+		this.ttl = ttl;
+		this.absentTtl = absentTtl;
+	}
+
+	/**
+	 * @return The entry of the key, or null if there is none or it is absent
+	 *         and has expired.
+	 */
+	private Entry<V> getEntry(K key, long currentTime) {
+		Entry<V> entry = this.entries.get(key.ordinal());
+		if (entry != null && entry.isAbsent()
+				&& currentTime - entry.timestamp > this.absentTtl) {
+			return null;
+		}
+		return entry;
+	}
+
+	private long getTtl(Entry<V> entry) {
+		return entry.isAbsent() ? this.absentTtl : this.ttl;
+	}
+
+	/**
+	 * @param key
+	 * @return The cached value, however old.
+	 * @throws OlympicException
+	 *             If there is none.
+	 */
+	public V get(K key) throws OlympicException {
+		Entry<V> entry = getEntry(key, System.currentTimeMillis());
+		if (entry == null) {
+			throw new OlympicException("Not in cache.");
+		}
+		return entry.value;
+	}
+
+	/**
+	 * @param key
+	 * @param currentTime
+	 * @return The cached value, if it is still fresh.
+	 * @throws OlympicException
+	 *             If there is none, or it is stale.
+	 */
+	public V get(K key, long currentTime) throws OlympicException {
+		Entry<V> entry = getEntry(key, currentTime);
+		if (entry == null) {
+			throw new OlympicException("Not in cache.");
+		}
+		if (currentTime - entry.timestamp > getTtl(entry)) {
+			throw new OlympicException("Cache entry is stale.");
+		}
+		return entry.value;
+	}
+
+	/**
+	 * @param key
+	 * @param currentTime
+	 * @param maxStaleness
+	 *            How long past its time to live an entry may still be
+	 *            served, in milliseconds.
+	 * @return The cached value, if it is fresh or, unless absent, stale
+	 *         within the bound.
+	 * @throws OlympicException
+	 *             If there is none, or it is staler than that.
+	 */
+	public V get(K key, long currentTime, long maxStaleness)
+			throws OlympicException {
+		Entry<V> entry = getEntry(key, currentTime);
+		if (entry == null) {
+			throw new OlympicException("Not in cache.");
+		}
+		if (!entry.isAbsent()
+				&& currentTime - entry.timestamp > this.ttl + maxStaleness) {
+			throw new OlympicException("Cache entry is stale.");
+		}
+		return entry.value;
+	}
+
+	/**
+	 * @param key
+	 * @param currentTime
+	 * @param refreshAhead
+	 *            How long before its time to live runs out an entry is due
+	 *            for refresh, in milliseconds.
+	 * @return Whether the entry is missing, stale or about to be.
+	 */
+	public boolean isExpiring(K key, long currentTime, long refreshAhead) {
+		Entry<V> entry = getEntry(key, currentTime);
+		return entry == null
+				|| currentTime - entry.timestamp > getTtl(entry) - refreshAhead;
+	}
+
+	/**
+	 * Caches a value pushed or fed to Obelix, with no version to revalidate
+	 * it by.
+	 */
+	public void cache(K key, V value) {
+		cache(key, value, System.currentTimeMillis(), Versioned.NO_VERSION);
+	}
+
+	public void cache(K key, V value, long timestamp) {
+		cache(key, value, timestamp, Versioned.NO_VERSION);
+	}
+
+	/**
+	 * Caches a value read from Orgetorix along with its version, so it can
+	 * later be revalidated instead of fetched again.
+	 */
+	public void cache(K key, V value, long timestamp, long version) {
+		this.entries.set(key.ordinal(), new Entry<V>(value, timestamp,
+				version, false));
+	}
+
+	/**
+	 * @return The absent generation to pass to
+	 *         {@link #cacheAbsent(Enum, Object, long, long, long)} for data
+	 *         about to be read.
+	 */
+	public long getAbsentGeneration(K key) {
+		return this.absentGenerations.get(key.ordinal());
+	}
+
+	/**
+	 * Caches a value read from Orgetorix along with its version, unless the
+	 * entry already holds a later version, such as one read by a concurrent
+	 * fetch, or a value with no version to compare by.
+	 */
+	public void cacheIfNewer(K key, V value, long timestamp, long version) {
+		Entry<V> newEntry = new Entry<V>(value, timestamp, version, false);
+		while (true) {
+			Entry<V> entry = this.entries.get(key.ordinal());
+			if (entry != null
+					&& (entry.version == Versioned.NO_VERSION
+							|| entry.version > version)) {
+				return;
+			}
+			if (this.entries.compareAndSet(key.ordinal(), entry, newEntry)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Caches the answer that Orgetorix has no data for a key yet, along with
+	 * its version, so it can be revalidated like a value, unless data has
+	 * been written for the key since the answer was read. The entry is
+	 * published before the generation is checked again, so a write racing
+	 * with it either finds the entry or changes the generation first.
+	 *
+	 * @param generation
+	 *            The absent generation of the key before the read.
+	 */
+	public void cacheAbsent(K key, V value, long timestamp, long version,
+			long generation) {
+		Entry<V> entry = new Entry<V>(value, timestamp, version, true);
+		this.entries.set(key.ordinal(), entry);
+		if (this.absentGenerations.get(key.ordinal()) != generation) {
+			this.entries.compareAndSet(key.ordinal(), entry, null);
+		}
+	}
+
+	/**
+	 * @return The version of the cached entry, or Versioned.NO_VERSION if
+	 *         there is none.
+	 */
+	public long getVersion(K key) {
+		Entry<V> entry = this.entries.get(key.ordinal());
+		return (entry == null) ? Versioned.NO_VERSION : entry.version;
+	}
+
+	/**
+	 * Marks an entry as fresh after Orgetorix reported it unmodified, unless
+	 * it has since been replaced or removed.
+	 *
+	 * @param key
+	 * @param version
+	 *            The version Orgetorix reported unmodified.
+	 * @param timestamp
+	 * @return The cached value and its version, or null if the entry is no
+	 *         longer of that version.
+	 */
+	public Versioned<V> revalidate(K key, long version, long timestamp) {
+		while (true) {
+			Entry<V> entry = this.entries.get(key.ordinal());
+			if (entry == null || entry.version != version) {
+				return null;
+			}
+			if (this.entries.compareAndSet(key.ordinal(), entry,
+					new Entry<V>(entry.value, timestamp, entry.version,
+							entry.absent))) {
+				return Versioned.of(entry.version, entry.value);
+			}
+		}
+	}
+
+	public void invalidate(K key) {
+		this.entries.set(key.ordinal(), null);
+	}
+
+	/**
+	 * Removes the entry of a key if it is cached as absent, once data for the
+	 * key has been written, and starts a new absent generation, so an absent
+	 * answer read before the write is not cached after it.
+	 */
+	public void invalidateAbsent(K key) {
+		this.absentGenerations.incrementAndGet(key.ordinal());
+		Entry<V> entry = this.entries.get(key.ordinal());
+		if (entry != null && entry.isAbsent()) {
+			this.entries.compareAndSet(key.ordinal(), entry, null);
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < this.entries.length(); i++) {
+			this.entries.set(i, null);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Bounded write-behind queue for writes that can tolerate a short window of
+ * loss. A submitted record is applied in memory and queued, and the writer
+ * returns immediately; a background flusher appends the queued records to the
+ * {@link UpdateLog} and syncs them every flush interval. Writers block only
+ * when the queue is full.
+ *
+ * @author aravind
+ *
+ */
+public class WriteBehindQueue implements Runnable {
+
+	/**
+	 * A queued record and the time it was submitted.
+	 */
+	private static class QueuedWrite {
+		private byte[] encodedRecord;
+		private long submitTime;
+
+		private QueuedWrite(byte[] encodedRecord) {
+			this.encodedRecord = encodedRecord;
+			this.submitTime = System.nanoTime();
+		}
+	}
+
+	private LinkedList<QueuedWrite> queuedWrites;
+	private UpdateLog updateLog;
+	private GroupCommitter.CommitListener listener;
+	private int capacity;
+	private long flushInterval;
+	private CommitStatistics statistics;
+	private volatile boolean running = true;
+
+	public WriteBehindQueue(UpdateLog updateLog,
+			GroupCommitter.CommitListener listener, int capacity,
+			long flushInterval) {
+		this.queuedWrites = new LinkedList<QueuedWrite>();
+		this.updateLog = updateLog;
+		this.listener = listener;
+		this.capacity = capacity;
+		this.flushInterval = flushInterval;
+		this.statistics = new CommitStatistics();
+	}
+
+	/**
+	 * Applies a record in memory and queues it to be flushed. Blocks while the
+	 * queue is full.
+	 *
+	 * @param record
+	 * @throws IOException
+	 */
+	public void submit(LogRecord record) throws IOException {
+		QueuedWrite queuedWrite = new QueuedWrite(UpdateLog.encode(record));
+		synchronized (this) {
+			while (this.queuedWrites.size() >= this.capacity) {
+				if (!this.running) {
+					throw new IOException("Update log is closed.");
+				}
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted waiting for the"
+							+ " write-behind queue.", e);
+				}
+			}
+			this.listener.committed(record);
+			this.queuedWrites.add(queuedWrite);
+		}
+	}
+
+	/**
+	 * Appends and syncs every queued record. Must be called with the update
+	 * log locked, so that the queued records land in the current segment.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		List<QueuedWrite> batch = null;
+		synchronized (this) {
+			if (this.queuedWrites.isEmpty()) {
+				return;
+			}
+			batch = new ArrayList<QueuedWrite>(this.queuedWrites);
+			this.queuedWrites.clear();
+			this.notifyAll();
+		}
+
+		List<byte[]> encodedRecords = new ArrayList<byte[]>(batch.size());
+		for (QueuedWrite queuedWrite : batch) {
+			encodedRecords.add(queuedWrite.encodedRecord);
+		}
+		this.updateLog.appendAll(encodedRecords);
+
+		this.statistics.recordBatch(batch.size());
+		long flushTime = System.nanoTime();
+		for (QueuedWrite queuedWrite : batch) {
+			this.statistics.recordLatency(flushTime - queuedWrite.submitTime);
+		}
+	}
+
+	public CommitStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Stops the flusher after a final flush of the queued records.
+	 */
+	public void shutdown() {
+		this.running = false;
+	}
+
+	@Override
+	public void run() {
+		while (this.running) {
+			try {
+				Thread.sleep(this.flushInterval);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			flushLogged();
+		}
+		flushLogged();
+		synchronized (this) {
+			this.notifyAll();
+		}
+	}
+
+	private void flushLogged() {
+		synchronized (this.updateLog) {
+			try {
+				flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import server.VersionedCache;
+import base.NationCategories;
+import base.OlympicException;
+import base.Tally;
+
+/**
+ * Measures the read throughput of the Obelix tally cache as the number of
+ * concurrent readers grows, each standing in for an RMI thread serving a
+ * client, while a writer keeps replacing entries as the change feed would.
+ * {@link VersionedCache} is compared against the monitor-guarded maps the
+ * Obelix caches used before it. The reader counts can be given on the command
+ * line, e.g. "java sim.CacheReadBenchmark 1 2 4 8".
+ *
+ * @author aravind
+ *
+ */
+public class CacheReadBenchmark {
+
+	private static long RUN_TIME = 2000;
+	private static long TTL = 30000;
+	private static Random random = new Random();
+
+	/**
+	 * The cache operations measured, so both caches run the same loop.
+	 */
+	private interface TallyReader {
+		public Tally read(NationCategories nation, long currentTime)
+				throws OlympicException;
+
+		public void write(NationCategories nation, Tally medalTally,
+				long currentTime);
+	}
+
+	/**
+	 * The design VersionedCache replaced: separate maps of values and
+	 * timestamps, each guarded by its own monitor.
+	 */
+	private static class MonitorTallyCache implements TallyReader {
+		private Map<NationCategories, Tally> tallyCache = new HashMap<NationCategories, Tally>();
+		private Map<NationCategories, Long> timeStamps = new HashMap<NationCategories, Long>();
+
+		@Override
+		public Tally read(NationCategories nation, long currentTime)
+				throws OlympicException {
+			synchronized (this.timeStamps) {
+				Long timestamp = this.timeStamps.get(nation);
+				if (timestamp == null || currentTime > timestamp + TTL) {
+					throw new OlympicException("Cache entry is stale.");
+				}
+			}
+			synchronized (this.tallyCache) {
+				return this.tallyCache.get(nation);
+			}
+		}
+
+		@Override
+		public void write(NationCategories nation, Tally medalTally,
+				long currentTime) {
+			synchronized (this.tallyCache) {
+				this.tallyCache.put(nation, medalTally);
+				synchronized (this.timeStamps) {
+					this.timeStamps.put(nation, currentTime);
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws OlympicException {
+		ArrayList<Integer> readerCounts = new ArrayList<Integer>();
+		for (String arg : args) {
+			readerCounts.add(Integer.parseInt(arg));
+		}
+		if (readerCounts.isEmpty()) {
+			int processors = Runtime.getRuntime().availableProcessors();
+			for (int readers = 1; readers <= processors * 2; readers *= 2) {
+				readerCounts.add(readers);
+			}
+		}
+
+		final VersionedCache<NationCategories, Tally> versionedCache = new VersionedCache<NationCategories, Tally>(
+				NationCategories.class, TTL);
+		TallyReader lockFreeCache = new TallyReader() {
+
+			@Override
+			public Tally read(NationCategories nation, long currentTime)
+					throws OlympicException {
+				return versionedCache.get(nation, currentTime);
+			}
+
+			@Override
+			public void write(NationCategories nation, Tally medalTally,
+					long currentTime) {
+				versionedCache.cache(nation, medalTally, currentTime);
+			}
+		};
+		TallyReader monitorCache = new MonitorTallyCache();
+
+		System.out.println(Runtime.getRuntime().availableProcessors()
+				+ " processors.");
+		System.out.println(String.format("%-10s %20s %20s", "Readers",
+				"VersionedCache/s", "Monitor maps/s"));
+		try {
+			for (int readers : readerCounts) {
+				System.out.println(String.format("%-10d %20d %20d", readers,
+						measureReads(lockFreeCache, readers),
+						measureReads(monitorCache, readers)));
+			}
+		} catch (InterruptedException e) {
+			throw new OlympicException("Benchmark failed.", e);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the given number of readers against the cache, alongside a writer
+	 * replacing an entry every millisecond, for a fixed time.
+	 *
+	 * @return Reads completed per second across all readers.
+	 */
+	private static long measureReads(final TallyReader cache, int readers)
+			throws InterruptedException {
+		for (NationCategories nation : NationCategories.values()) {
+			cache.write(nation, new Tally(), System.currentTimeMillis());
+		}
+		final AtomicLong reads = new AtomicLong();
+		final long endTime = System.currentTimeMillis() + RUN_TIME;
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		threads.add(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (System.currentTimeMillis() < endTime) {
+					cache.write(NationCategories.values()[random
+							.nextInt(NationCategories.values().length)],
+							new Tally(), System.currentTimeMillis());
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}));
+		for (int i = 0; i < readers; i++) {
+			threads.add(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					NationCategories[] nations = NationCategories.values();
+					long completed = 0;
+					long currentTime = System.currentTimeMillis();
+					while (currentTime < endTime) {
+						for (int j = 0; j < 1024; j++) {
+							try {
+								cache.read(nations[j % nations.length],
+										currentTime);
+							} catch (OlympicException e) {
+								throw new IllegalStateException(e);
+							}
+						}
+						completed += 1024;
+						currentTime = System.currentTimeMillis();
+					}
+					reads.addAndGet(completed);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return reads.get() * 1000 / RUN_TIME;
+	}
+}
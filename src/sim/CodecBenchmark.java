@@ -0,0 +1,219 @@
+package sim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+
+import server.LogRecord;
+import server.RecordCodec;
+import base.Athlete;
+import base.EventCategories;
+import base.MedalCategories;
+import base.NationCategories;
+import base.OlympicException;
+import base.Results;
+
+/**
+ * Checks that log records survive a round trip through {@link RecordCodec} and
+ * compares its encoded size and encode/decode throughput against the Java
+ * serialization Orgetorix previously wrote to disk.
+ *
+ * @author aravind
+ *
+ */
+public class CodecBenchmark {
+
+	private static int ATHLETES_PER_EVENT = 8;
+	private static int RECORDS = 1000;
+	private static int ITERATIONS = 20;
+	private static Random random = new Random();
+
+	public static void main(String[] args) throws OlympicException {
+		try {
+			ArrayList<LogRecord> records = createRecords();
+			for (LogRecord record : records) {
+				verifyRoundTrip(record);
+			}
+			System.out.println("Round trip verified for " + records.size()
+					+ " records.");
+
+			System.out.println(String.format("%-20s %15s %15s %15s", "Codec",
+					"Bytes/record", "Encode (us)", "Decode (us)"));
+			measureJavaSerialization(records);
+			measureBinaryCodec(records);
+		} catch (IOException | ClassNotFoundException e) {
+			throw new OlympicException("Benchmark failed.", e);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Creates a mix of score, result and tally records like those Orgetorix
+	 * logs.
+	 *
+	 * @return ArrayList<LogRecord>
+	 */
+	private static ArrayList<LogRecord> createRecords() {
+		ArrayList<LogRecord> records = new ArrayList<LogRecord>();
+		for (int i = 0; i < RECORDS; i++) {
+			EventCategories eventName = EventCategories.values()[i
+					% EventCategories.values().length];
+			switch (i % 3) {
+			case 0:
+				ArrayList<Athlete> scores = new ArrayList<Athlete>();
+				for (int j = 0; j < ATHLETES_PER_EVENT; j++) {
+					Athlete athlete = new Athlete(UUID.randomUUID().toString(),
+							randomNation(), eventName, random.nextInt(100));
+					athlete.setTimestamp(System.currentTimeMillis());
+					scores.add(athlete);
+				}
+				records.add(LogRecord.scoreUpdate(eventName, scores));
+				break;
+			case 1:
+				records.add(LogRecord.resultUpdate(eventName, randomResults()));
+				break;
+			default:
+				records.add(LogRecord.tallyUpdate(randomResults()));
+				break;
+			}
+		}
+		return records;
+	}
+
+	private static Results randomResults() {
+		ArrayList<NationCategories> winners = new ArrayList<NationCategories>();
+		for (int j = 0; j < MedalCategories.values().length; j++) {
+			winners.add(randomNation());
+		}
+		Results eventResult = new Results(winners);
+		eventResult.setTimestamp(System.currentTimeMillis());
+		return eventResult;
+	}
+
+	private static NationCategories randomNation() {
+		return NationCategories.values()[random.nextInt(NationCategories
+				.values().length)];
+	}
+
+	/**
+	 * Decodes an encoded record and compares it field by field with the
+	 * original.
+	 *
+	 * @param record
+	 * @throws IOException
+	 */
+	private static void verifyRoundTrip(LogRecord record) throws IOException {
+		LogRecord decoded = RecordCodec.decodeRecord(RecordCodec
+				.encode(record));
+		check(decoded.getType() == record.getType(), "type");
+		check(decoded.getEventName() == record.getEventName(), "event name");
+		if (record.getScores() != null) {
+			check(decoded.getScores().size() == record.getScores().size(),
+					"number of scores");
+			for (int i = 0; i < record.getScores().size(); i++) {
+				Athlete original = record.getScores().get(i);
+				Athlete copy = decoded.getScores().get(i);
+				check(copy.getName().equals(original.getName()), "name");
+				check(copy.getNationality() == original.getNationality(),
+						"nationality");
+				check(copy.getEvent() == original.getEvent(), "event");
+				check(copy.getScore() == original.getScore(), "score");
+				check(copy.getTimestamp().equals(original.getTimestamp()),
+						"athlete timestamp");
+			}
+		}
+		if (record.getEventResult() != null) {
+			for (MedalCategories medalType : MedalCategories.values()) {
+				check(decoded.getEventResult().getTeam(medalType) == record
+						.getEventResult().getTeam(medalType), "winner");
+			}
+			check(decoded.getEventResult().getTimestamp()
+					.equals(record.getEventResult().getTimestamp()),
+					"result timestamp");
+		}
+	}
+
+	private static void check(boolean condition, String field) {
+		if (!condition) {
+			throw new IllegalStateException("Round trip changed the " + field
+					+ ".");
+		}
+	}
+
+	private static void measureJavaSerialization(ArrayList<LogRecord> records)
+			throws IOException, ClassNotFoundException {
+		ArrayList<byte[]> encodedRecords = new ArrayList<byte[]>();
+		long totalBytes = 0;
+		long encodeTime = 0;
+		long decodeTime = 0;
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			encodedRecords.clear();
+			totalBytes = 0;
+			long startTime = System.nanoTime();
+			for (LogRecord record : records) {
+				ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+				ObjectOutputStream out = new ObjectOutputStream(bytesOut);
+				out.writeObject(record);
+				out.close();
+				byte[] encodedRecord = bytesOut.toByteArray();
+				totalBytes += encodedRecord.length;
+				encodedRecords.add(encodedRecord);
+			}
+			encodeTime = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (byte[] encodedRecord : encodedRecords) {
+				ObjectInputStream in = new ObjectInputStream(
+						new ByteArrayInputStream(encodedRecord));
+				in.readObject();
+				in.close();
+			}
+			decodeTime = System.nanoTime() - startTime;
+		}
+		report("Java serialization", records.size(), totalBytes, encodeTime,
+				decodeTime);
+	}
+
+	private static void measureBinaryCodec(ArrayList<LogRecord> records)
+			throws IOException {
+		ArrayList<byte[]> encodedRecords = new ArrayList<byte[]>();
+		long totalBytes = 0;
+		long encodeTime = 0;
+		long decodeTime = 0;
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			encodedRecords.clear();
+			totalBytes = 0;
+			long startTime = System.nanoTime();
+			for (LogRecord record : records) {
+				byte[] encodedRecord = RecordCodec.encode(record);
+				totalBytes += encodedRecord.length;
+				encodedRecords.add(encodedRecord);
+			}
+			encodeTime = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (byte[] encodedRecord : encodedRecords) {
+				RecordCodec.decodeRecord(encodedRecord);
+			}
+			decodeTime = System.nanoTime() - startTime;
+		}
+		report("Binary codec", records.size(), totalBytes, encodeTime,
+				decodeTime);
+	}
+
+	/**
+	 * Prints the figures of the last iteration, after the earlier ones have
+	 * warmed up the JIT.
+	 */
+	private static void report(String codec, int numberOfRecords,
+			long totalBytes, long encodeTime, long decodeTime) {
+		System.out.println(String.format("%-20s %15d %15.3f %15.3f", codec,
+				totalBytes / numberOfRecords, encodeTime / 1e3
+						/ numberOfRecords, decodeTime / 1e3 / numberOfRecords));
+	}
+}
@@ -0,0 +1,117 @@
+package sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import server.LogStructuredStore;
+import server.StorageConfiguration;
+import base.Event;
+import base.EventCategories;
+import base.NationCategories;
+import base.OlympicException;
+
+/**
+ * Measures the read throughput of {@link LogStructuredStore} as the number of
+ * concurrent readers grows, each standing in for an Obelix replica, while a
+ * writer keeps updating the medal tallies.
+ *
+ * @author aravind
+ *
+ */
+public class ReadScalingBenchmark {
+
+	private static int[] READERS = { 1, 2, 4, 8, 16 };
+	private static long RUN_TIME = 2000;
+
+	public static void main(String[] args) throws OlympicException {
+		try {
+			File directory = Files.createTempDirectory("ReadScalingBenchmark")
+					.toFile();
+			final LogStructuredStore store = new LogStructuredStore(
+					directory.getPath() + File.separator, "Reads",
+					new StorageConfiguration());
+			final Event event = new Event(EventCategories.STONE_SKATING);
+			ArrayList<NationCategories> winners = new ArrayList<NationCategories>();
+			for (int i = 0; i < 3; i++) {
+				winners.add(NationCategories.values()[i
+						% NationCategories.values().length]);
+			}
+			event.getResult().updateWinners(winners);
+			store.updateCurrentScores(event.getName(), event.getScores());
+			store.updateResults(event);
+
+			System.out.println(String.format("%-10s %20s", "Readers",
+					"Reads/second"));
+			for (int readers : READERS) {
+				System.out.println(String.format("%-10d %20d", readers,
+						measureReads(store, event, readers)));
+			}
+			store.close();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		} catch (IOException | InterruptedException e) {
+			throw new OlympicException("Benchmark failed.", e);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the given number of readers against the store, alongside a writer
+	 * crediting medals, for a fixed time.
+	 *
+	 * @return Reads completed per second across all readers.
+	 */
+	private static long measureReads(final LogStructuredStore store,
+			final Event event, int readers) throws InterruptedException {
+		final AtomicLong reads = new AtomicLong();
+		final long endTime = System.currentTimeMillis() + RUN_TIME;
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		threads.add(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (System.currentTimeMillis() < endTime) {
+					try {
+						store.updateMedalTallies(event.getResult());
+					} catch (IOException e) {
+						e.printStackTrace();
+						return;
+					}
+				}
+			}
+		}));
+		for (int i = 0; i < readers; i++) {
+			threads.add(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					// A random of its own, so readers do not contend on a
+					// shared seed instead of on the store.
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					long completed = 0;
+					while (System.currentTimeMillis() < endTime) {
+						store.getMedalTally(NationCategories.values()[random
+								.nextInt(NationCategories.values().length)]);
+						store.getResults(event.getName());
+						store.getCurrentScores(event.getName());
+						completed += 3;
+					}
+					reads.addAndGet(completed);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return reads.get() * 1000 / RUN_TIME;
+	}
+}
@@ -0,0 +1,170 @@
+package sim;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import server.Durability;
+import server.LogRecord.RecordType;
+import server.LogStructuredStore;
+import server.StorageConfiguration;
+import base.Athlete;
+import base.Event;
+import base.EventCategories;
+import base.NationCategories;
+import base.OlympicException;
+import base.Results;
+
+/**
+ * Compares the latency of looking up the results of an event through the
+ * in-memory results index of {@link LogStructuredStore} against the previous
+ * Orgetorix path, which deserialized the whole set of completed events from
+ * disk and scanned it. Both hold the same data, one completed event per event
+ * category. The events are serialized with their athletes, as the previous
+ * results file held them, so the comparison is run as the number of athletes
+ * per event grows.
+ *
+ * @author aravind
+ *
+ */
+public class ResultLookupBenchmark {
+
+	private static int[] ATHLETES_PER_EVENT = { 10, 100, 1000, 10000 };
+	private static int FILE_LOOKUPS = 50;
+	private static int INDEX_LOOKUPS = 1000000;
+	private static Random random = new Random();
+
+	public static void main(String[] args) throws OlympicException {
+		try {
+			File directory = Files.createTempDirectory("ResultLookupBenchmark")
+					.toFile();
+			System.out.println(String.format("%-18s %20s %20s",
+					"Athletes/event", "File scan (us/op)", "Index (us/op)"));
+			for (int athletes : ATHLETES_PER_EVENT) {
+				Set<Event> events = createCompletedEvents(athletes);
+				double fileLatency = measureFileScan(directory, events);
+				double indexLatency = measureIndex(directory, events, athletes);
+				System.out.println(String.format("%-18d %20.3f %20.3f",
+						athletes, fileLatency, indexLatency));
+			}
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new OlympicException("Benchmark failed.", e);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Creates a completed event of every category, with random winners.
+	 *
+	 * @param athletes
+	 *            The number of athletes taking part in each event.
+	 * @return Set<Event>
+	 */
+	private static Set<Event> createCompletedEvents(int athletes) {
+		Set<Event> events = new HashSet<Event>();
+		for (EventCategories eventName : EventCategories.values()) {
+			Event event = new Event(eventName);
+			List<Athlete> scores = event.getScores();
+			while (scores.size() < athletes) {
+				scores.add(new Athlete(eventName));
+			}
+			ArrayList<NationCategories> winners = new ArrayList<NationCategories>();
+			for (int j = 0; j < 3; j++) {
+				winners.add(NationCategories.values()[random
+						.nextInt(NationCategories.values().length)]);
+			}
+			event.getResult().updateWinners(winners);
+			events.add(event);
+		}
+		return events;
+	}
+
+	/**
+	 * Measures the previous lookup path: deserialize the result file and scan
+	 * it for the event.
+	 *
+	 * @return Average latency per lookup in microseconds.
+	 */
+	private static double measureFileScan(File directory, Set<Event> events)
+			throws IOException, ClassNotFoundException {
+		File resultFile = new File(directory, "Results");
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(
+				resultFile));
+		out.writeObject(events);
+		out.close();
+
+		Results found = null;
+		long startTime = System.nanoTime();
+		for (int i = 0; i < FILE_LOOKUPS; i++) {
+			EventCategories eventName = randomEvent();
+			ObjectInputStream in = new ObjectInputStream(new FileInputStream(
+					resultFile));
+			@SuppressWarnings("unchecked")
+			Set<Event> completedEvents = (Set<Event>) in.readObject();
+			in.close();
+			for (Event event : completedEvents) {
+				if (event.getName() == eventName) {
+					found = event.getResult();
+					break;
+				}
+			}
+		}
+		long duration = System.nanoTime() - startTime;
+		consume(found);
+		return duration / 1e3 / FILE_LOOKUPS;
+	}
+
+	/**
+	 * Measures lookups through the in-memory results index.
+	 *
+	 * @return Average latency per lookup in microseconds.
+	 */
+	private static double measureIndex(File directory, Set<Event> events,
+			int athletes) throws IOException {
+		StorageConfiguration configuration = new StorageConfiguration();
+		configuration.setDurability(RecordType.RESULTS, Durability.ASYNC);
+		LogStructuredStore store = new LogStructuredStore(
+				directory.getPath() + File.separator, "Index" + athletes,
+				configuration);
+		for (Event event : events) {
+			store.updateResults(event);
+		}
+
+		Results found = null;
+		for (int i = 0; i < INDEX_LOOKUPS; i++) {
+			found = store.getResults(randomEvent());
+		}
+		long startTime = System.nanoTime();
+		for (int i = 0; i < INDEX_LOOKUPS; i++) {
+			found = store.getResults(randomEvent());
+		}
+		long duration = System.nanoTime() - startTime;
+		consume(found);
+		store.close();
+		return duration / 1e3 / INDEX_LOOKUPS;
+	}
+
+	private static EventCategories randomEvent() {
+		return EventCategories.values()[random.nextInt(EventCategories
+				.values().length)];
+	}
+
+	private static void consume(Results result) {
+		if (result == null) {
+			System.out.println("No results found.");
+		}
+	}
+}
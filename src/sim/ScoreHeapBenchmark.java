@@ -0,0 +1,131 @@
+package sim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import base.Athlete;
+import base.AthleteScores;
+import base.EventCategories;
+import base.NationCategories;
+import base.OlympicException;
+
+/**
+ * Compares the heap retained by a large field of athletes held as an
+ * ArrayList of Athletes and as {@link AthleteScores}, after checking that
+ * both a small list, held on the heap, and one large enough to be held off
+ * the heap read back and serialize as the athletes they were built from.
+ * The number of athletes can be given on the command line, e.g.
+ * "java sim.ScoreHeapBenchmark 2000000".
+ *
+ * @author aravind
+ *
+ */
+public class ScoreHeapBenchmark {
+
+	private static int ATHLETES = 1000000;
+	private static EventCategories EVENT = EventCategories.STONE_SKATING;
+	private static Random random = new Random();
+
+	public static void main(String[] args) throws OlympicException {
+		int athletes = (args.length > 0) ? Integer.parseInt(args[0]) : ATHLETES;
+		try {
+			verify(createScores(1000));
+			verify(createScores(100000));
+			System.out.println("Round trip verified.");
+		} catch (IOException | ClassNotFoundException e) {
+			throw new OlympicException("Benchmark failed.", e);
+		}
+
+		System.out.println(String.format("%-14s %12s %16s %14s", "Holder",
+				"Athletes", "Heap bytes", "Bytes/athlete"));
+		long baseline = usedHeap();
+		List<Athlete> heapScores = createScores(athletes);
+		long heapBytes = usedHeap() - baseline;
+		report("ArrayList", heapScores.size(), heapBytes);
+
+		List<Athlete> offHeapScores = AthleteScores.of(heapScores);
+		heapScores = null;
+		long offHeapBytes = usedHeap() - baseline;
+		report("AthleteScores", offHeapScores.size(), offHeapBytes);
+		System.exit(0);
+	}
+
+	private static List<Athlete> createScores(int athletes) {
+		ArrayList<Athlete> scores = new ArrayList<Athlete>(athletes);
+		for (int i = 0; i < athletes; i++) {
+			Athlete athlete = new Athlete(UUID.randomUUID().toString(),
+					NationCategories.values()[random.nextInt(NationCategories
+							.values().length)], EVENT, random.nextInt(100));
+			athlete.setTimestamp(System.currentTimeMillis());
+			scores.add(athlete);
+		}
+		scores.add(new Athlete("Vercingetorix", NationCategories.GAUL, EVENT,
+				random.nextInt(100)));
+		return scores;
+	}
+
+	/**
+	 * Checks the columnar copy field by field, directly and after being
+	 * serialized as it would be over RMI.
+	 */
+	private static void verify(List<Athlete> scores) throws IOException,
+			ClassNotFoundException {
+		AthleteScores offHeapScores = AthleteScores.of(scores);
+		compare(scores, offHeapScores);
+
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytesOut);
+		out.writeObject(offHeapScores);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytesOut.toByteArray()));
+		Object copy = in.readObject();
+		in.close();
+		check(copy instanceof ArrayList, "serialized as an ArrayList");
+		@SuppressWarnings("unchecked")
+		List<Athlete> copiedScores = (List<Athlete>) copy;
+		compare(scores, copiedScores);
+	}
+
+	private static void compare(List<Athlete> original, List<Athlete> copy) {
+		check(copy.size() == original.size(), "same number of athletes");
+		for (int i = 0; i < original.size(); i++) {
+			Athlete athlete = original.get(i);
+			Athlete copied = copy.get(i);
+			check(copied.getName().equals(athlete.getName()), "name");
+			check(copied.getNationality() == athlete.getNationality(),
+					"nationality");
+			check(copied.getEvent() == athlete.getEvent(), "event");
+			check(copied.getScore() == athlete.getScore(), "score");
+			check(copied.getTimestamp() == null ? athlete.getTimestamp() == null
+					: copied.getTimestamp().equals(athlete.getTimestamp()),
+					"timestamp");
+		}
+	}
+
+	private static void check(boolean condition, String check) {
+		if (!condition) {
+			throw new IllegalStateException("Check failed: " + check + ".");
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void report(String holder, int athletes, long bytes) {
+		System.out.println(String.format("%-14s %12d %16d %14.1f", holder,
+				athletes, bytes, (double) bytes / Math.max(1, athletes)));
+	}
+}
@@ -0,0 +1,235 @@
+package sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import server.ChangeBatch;
+import server.Change;
+import server.StorageConfiguration;
+import server.StorageConfiguration.Engine;
+import server.StorageEngine;
+import server.StorageEngines;
+import base.Athlete;
+import base.Event;
+import base.EventCategories;
+import base.MedalCategories;
+import base.NationCategories;
+import base.OlympicException;
+import base.Results;
+import base.UpdateId;
+import base.Versioned;
+
+/**
+ * Runs the same conformance checks and measurements against every
+ * {@link StorageEngine}, or only those named on the command line, e.g.
+ * "java sim.StorageEngineSuite memory file". An engine failing a check stops
+ * the suite with the check that failed.
+ *
+ * @author aravind
+ *
+ */
+public class StorageEngineSuite {
+
+	private static String DB_NAME = "Suite";
+	private static int UPDATES = 2000;
+	private static int READS = 200000;
+	private static EventCategories EVENT = EventCategories.STONE_LUGING;
+	private static NationCategories NATION = NationCategories.ROME;
+	private static MedalCategories MEDAL = MedalCategories.values()[0];
+
+	public static void main(String[] args) throws OlympicException {
+		List<Engine> engines = new ArrayList<Engine>();
+		for (String arg : args) {
+			engines.add(Engine.valueOf(arg.toUpperCase()));
+		}
+		if (engines.isEmpty()) {
+			for (Engine engine : Engine.values()) {
+				engines.add(engine);
+			}
+		}
+		System.out.println(String.format("%-8s %-6s %16s %16s %16s",
+				"Engine", "Checks", "Scores/second", "Tallies/second",
+				"Reads/second"));
+		for (Engine engine : engines) {
+			try {
+				File directory = Files.createTempDirectory(
+						"StorageEngineSuite").toFile();
+				String fileLocation = directory.getPath() + File.separator;
+				checkConformance(engine, fileLocation);
+				long[] rates = measure(engine, fileLocation);
+				System.out.println(String.format("%-8s %-6s %16d %16d %16d",
+						engine.name().toLowerCase(), "pass", rates[0],
+						rates[1], rates[2]));
+				for (File file : directory.listFiles()) {
+					file.delete();
+				}
+				directory.delete();
+			} catch (IOException e) {
+				throw new OlympicException("Suite failed on " + engine + ".",
+						e);
+			}
+		}
+		System.exit(0);
+	}
+
+	private static StorageEngine open(Engine engine, String fileLocation,
+			String dbName) throws IOException {
+		StorageConfiguration configuration = StorageEngines.configure(engine);
+		return StorageEngines.open(fileLocation, dbName, configuration);
+	}
+
+	private static void check(Engine engine, boolean condition, String check)
+			throws OlympicException {
+		if (!condition) {
+			throw new OlympicException(engine + " failed: " + check + ".");
+		}
+	}
+
+	private static Results winner(NationCategories nation) {
+		Results eventResult = new Results();
+		eventResult.setTeam(MEDAL, nation);
+		return eventResult;
+	}
+
+	private static List<Athlete> scores(int athletes) {
+		List<Athlete> scores = new ArrayList<Athlete>();
+		for (int i = 0; i < athletes; i++) {
+			scores.add(new Athlete(EVENT));
+		}
+		return scores;
+	}
+
+	/**
+	 * Checks the behaviour every engine must share, see
+	 * {@link StorageEngine}.
+	 */
+	private static void checkConformance(Engine engine, String fileLocation)
+			throws IOException, OlympicException {
+		StorageEngine store = open(engine, fileLocation, DB_NAME);
+
+		check(engine, store.getMedalTally(NATION).getCount(MEDAL) == 0,
+				"new tallies are zero");
+		check(engine, store.getResults(EVENT) == null,
+				"new events have no results");
+		check(engine, store.getCurrentScores(EVENT).isEmpty(),
+				"new events have no scores");
+
+		long scoreVersion = store.getCurrentScoresIfNewer(EVENT,
+				Versioned.NO_VERSION).getVersion();
+		store.updateCurrentScores(EVENT, scores(2), new UpdateId("a", 2));
+		store.updateCurrentScores(EVENT, scores(1), new UpdateId("a", 1));
+		check(engine, store.getCurrentScores(EVENT).size() == 2,
+				"older scores from a producer are dropped");
+		Versioned<List<Athlete>> versionedScores = store
+				.getCurrentScoresIfNewer(EVENT, scoreVersion);
+		check(engine, versionedScores.isModified(),
+				"updated scores have a new version");
+		check(engine,
+				!store.getCurrentScoresIfNewer(EVENT,
+						versionedScores.getVersion()).isModified(),
+				"unchanged scores are not resent");
+		check(engine, store.getScoreHistory(EVENT, 0, Long.MAX_VALUE)
+				.size() == 1, "history holds each applied update");
+
+		Event completedEvent = new Event(EVENT);
+		for (MedalCategories medalType : MedalCategories.values()) {
+			completedEvent.getResult().setTeam(medalType, NATION);
+		}
+		store.updateResults(completedEvent, new UpdateId("a", 3));
+		check(engine, store.getResults(EVENT).getTeam(MEDAL) == NATION,
+				"results are stored");
+
+		UpdateId tallyId = new UpdateId("a", 4);
+		store.updateMedalTallies(winner(NATION), tallyId);
+		store.updateMedalTallies(winner(NATION), tallyId);
+		check(engine, store.getMedalTally(NATION).getCount(MEDAL) == 1,
+				"a tally update sent twice is credited once");
+		store.updateMedalTallies(winner(NATION), null);
+		store.updateMedalTallies(winner(null), null);
+		check(engine, store.getMedalTally(NATION).getCount(MEDAL) == 2,
+				"a tally update without an id is always credited");
+		check(engine, store.getAllTallies().get(NATION).getCount(MEDAL) == 2
+				&& store.getGamesSnapshot().getMedalTally(NATION)
+						.getCount(MEDAL) == 2, "bulk reads agree");
+
+		ChangeBatch resync = store.getChangesSince(-1, 1);
+		check(engine, resync.isResync()
+				&& resync.getTallySequences() != null,
+				"an unknown offset is sent the whole state");
+		StorageEngine standby = open(Engine.MEMORY, fileLocation, DB_NAME
+				+ "Standby");
+		standby.setTallySequences(resync.getTallySequences());
+		for (Change change : resync.getChanges()) {
+			standby.applyChange(change);
+		}
+		store.updateMedalTallies(winner(NATION), new UpdateId("a", 5));
+		ChangeBatch changes = store.getChangesSince(resync.getNextOffset(),
+				16);
+		check(engine, !changes.isResync() && changes.getChanges().size() == 1,
+				"changes are sent from the offset");
+		standby.applyChange(changes.getChanges().get(0));
+		standby.updateMedalTallies(winner(NATION), new UpdateId("a", 5));
+		check(engine, standby.getMedalTally(NATION).getCount(MEDAL) == 3,
+				"a replica recognises replicated tally updates");
+		standby.close();
+
+		store.checkpoint();
+		store.close();
+		if (engine == Engine.MEMORY) {
+			return;
+		}
+		store = open(engine, fileLocation, DB_NAME);
+		check(engine, store.getMedalTally(NATION).getCount(MEDAL) == 3
+				&& store.getResults(EVENT) != null
+				&& store.getCurrentScores(EVENT).size() == 2,
+				"the database is recovered after a restart");
+		store.updateMedalTallies(winner(NATION), tallyId);
+		check(engine, store.getMedalTally(NATION).getCount(MEDAL) == 3,
+				"credited tally updates are recognised after a restart");
+		store.close();
+	}
+
+	/**
+	 * Measures a single writer and a single reader against a new database.
+	 *
+	 * @return Score updates, tally updates and reads per second.
+	 */
+	private static long[] measure(Engine engine, String fileLocation)
+			throws IOException {
+		StorageEngine store = open(engine, fileLocation, DB_NAME + "Rates");
+		List<Athlete> currentScores = scores(8);
+		long startTime = System.nanoTime();
+		for (int i = 0; i < UPDATES; i++) {
+			store.updateCurrentScores(EVENT, currentScores, null);
+		}
+		long scoreRate = rate(UPDATES, startTime);
+
+		startTime = System.nanoTime();
+		for (int i = 0; i < UPDATES; i++) {
+			store.updateMedalTallies(
+					winner(NationCategories.values()[i
+							% NationCategories.values().length]),
+					new UpdateId("rates", i + 1));
+		}
+		long tallyRate = rate(UPDATES, startTime);
+
+		startTime = System.nanoTime();
+		for (int i = 0; i < READS; i++) {
+			store.getMedalTally(NationCategories.values()[i
+					% NationCategories.values().length]);
+			store.getResults(EVENT);
+			store.getCurrentScores(EVENT);
+		}
+		long readRate = rate(READS * 3, startTime);
+		store.close();
+		return new long[] { scoreRate, tallyRate, readRate };
+	}
+
+	private static long rate(long operations, long startTime) {
+		long elapsed = Math.max(1, System.nanoTime() - startTime);
+		return operations * 1000000000L / elapsed;
+	}
+}
@@ -6,6 +6,11 @@ import java.io.Serializable;
  * Describes a server offering a specified service with a server name and the
  * address on which it is hosted.
  * 
+ * A server may hold only one shard of the data behind its service. Shards are
+ * assigned by key, the ordinal of an event or a nation: shard i of n owns
+ * every key k with k % n == i. A server registered without a shard owns every
+ * key.
+ * 
  * @author aravind
  * 
  */
@@ -15,13 +20,22 @@ public class ServerDetail implements Serializable, Comparable<ServerDetail> {
 	private int PID;
 	private String serviceAddress;
 	private int servicePort;
+	private int shardIndex;
+	private int shardCount;
 
 	public ServerDetail(String serviceName, int PID, String serviceAddress,
 			int servicePort) {
+		this(serviceName, PID, serviceAddress, servicePort, 0, 1);
+	}
+
+	public ServerDetail(String serviceName, int PID, String serviceAddress,
+			int servicePort, int shardIndex, int shardCount) {
 		this.serviceName = serviceName;
 		this.PID = PID;
 		this.serviceAddress = serviceAddress;
 		this.servicePort = servicePort;
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
 	}
 
 	public String getServiceName() {
@@ -60,6 +74,32 @@ public class ServerDetail implements Serializable, Comparable<ServerDetail> {
 		this.servicePort = servicePort;
 	}
 
+	public int getShardIndex() {
+		return shardIndex;
+	}
+
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * @param shardKey
+	 *            The ordinal of an event or a nation.
+	 * @return true if the key belongs to this server's shard.
+	 */
+	public boolean ownsShardKey(int shardKey) {
+		return shardKey % this.shardCount == this.shardIndex;
+	}
+
+	/**
+	 * @param that
+	 * @return true if both servers hold the same shard.
+	 */
+	public boolean isSameShard(ServerDetail that) {
+		return this.shardIndex == that.shardIndex
+				&& this.shardCount == that.shardCount;
+	}
+
 	@Override
 	public int compareTo(ServerDetail that) {
 		String[] thisOctets = this.serviceAddress.split("\\.");
@@ -97,6 +97,23 @@ public abstract class ServiceComponent {
 		serviceFinderStub.registerService(serviceName, PID, address, rmiPort);
 	}
 
+	/**
+	 * Registers a server holding one shard of a specified service on
+	 * {@link ServiceFinder}
+	 * 
+	 * @param serviceName
+	 * @param address
+	 * @param rmiPort
+	 * @param shardIndex
+	 * @param shardCount
+	 * @throws RemoteException
+	 */
+	public void register(String serviceName, String address, int rmiPort,
+			int shardIndex, int shardCount) throws RemoteException {
+		serviceFinderStub.registerService(serviceName, PID, address, rmiPort,
+				shardIndex, shardCount);
+	}
+
 	/**
 	 * Retreives the server detail of any one server offering a specified
 	 * service.
@@ -115,6 +132,20 @@ public abstract class ServiceComponent {
 		return serviceFinderStub.getService(serviceName, requesterID);
 	}
 
+	/**
+	 * Retreives the server detail of the server offering a specified service
+	 * whose shard owns a key.
+	 * 
+	 * @param serviceName
+	 * @param shardKey
+	 * @return
+	 * @throws RemoteException
+	 */
+	public ServerDetail getShardServerDetails(String serviceName, int shardKey)
+			throws RemoteException {
+		return serviceFinderStub.getShardService(serviceName, shardKey);
+	}
+
 	public ServerDetail getSpecificServerDetails(String serverName)
 			throws RemoteException {
 		return serviceFinderStub.getServerDetail(serverName);
@@ -137,4 +168,17 @@ public abstract class ServiceComponent {
 	public void beat(String serverName) throws RemoteException {
 		serviceFinderStub.beat(serverName);
 	}
+
+	/**
+	 * Asks {@link ServiceFinder} to move this server to another service, which
+	 * it does only if no other server offers it.
+	 * 
+	 * @param serviceName
+	 * @return true if the server now offers serviceName.
+	 * @throws RemoteException
+	 */
+	public boolean promote(String serviceName) throws RemoteException {
+		return serviceFinderStub.promoteService(this.getServerName(),
+				serviceName);
+	}
 }